@@ -9,10 +9,15 @@ import com.thoughtworks.go.util.UrlUtil;
 import com.thoughtworks.go.visitor.StageVisitor;
 import com.thoughtworks.go.visitor.criteria.VisitingCriteria;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * @understands the commonality across versions
+ *
+ * The pages of the stage feed are read as they arrive from the Go server. When all the stages are visited, the entries
+ * of a page are visited before the next page is asked for. The entries of a page are only visited once the whole page
+ * has been read, so the connection that the page arrives on is not held while the stages are fetched.
  */
 public abstract class AbstractTalkToGo implements TalkToGo {
     protected final HttpClientWrapper httpClient;
@@ -26,9 +31,15 @@ public abstract class AbstractTalkToGo implements TalkToGo {
     }
 
     public void visitAllStages(StageVisitor visitor) {
-        List<FeedEntry> entries = stageFeedEntries();
-        for (FeedEntry entry : entries) {
-            visit(visitor, entry);
+        FeedEntries feedEntries = nextEntries();
+        while (true) {
+            for (FeedEntry entry : feedEntries.getEntries()) {
+                visit(visitor, entry);
+            }
+            if (!infiniteCrawler || feedEntries.getNextLink() == null) {
+                break;
+            }
+            feedEntries = entriesAfter(feedEntries);
         }
     }
 
@@ -65,28 +76,32 @@ public abstract class AbstractTalkToGo implements TalkToGo {
 
     protected abstract void enhance(Stage stage, FeedEntry entry);
 
+    /**
+     * Returns a copy of the stage bound to the client, so neither {@link #enhance(Stage, FeedEntry)} nor the caller ever
+     * gets hold of the instance that is shared by everyone who asks for the same stage.
+     */
     private Stage stage(FeedEntry entry) {
-        Stage stage = Stage.create(httpClient.get(HttpClientWrapper.scrub(entry.getResourceLink(), "/api/stages/")));
+        Stage stage = httpClient.get(HttpClientWrapper.scrub(entry.getResourceLink(), "/api/stages/"), Stage.PARSER).using(httpClient);
         enhance(stage, entry);
-        stage.using(httpClient);
         return stage;
     }
 
     public List<FeedEntry> stageFeedEntries() {
         FeedEntries feedEntries = nextEntries();
-        List<FeedEntry> elements = feedEntries.getEntries();
-        String feedText;
+        List<FeedEntry> elements = new ArrayList<FeedEntry>(feedEntries.getEntries());
         while (infiniteCrawler && feedEntries.getNextLink() != null) {
-            feedText = httpClient.get(feedUrl(), UrlUtil.parametersFrom(feedEntries.getNextLink()));
-            feedEntries = FeedEntries.create(feedText);
+            feedEntries = entriesAfter(feedEntries);
             elements.addAll(feedEntries.getEntries());
         }
         return elements;
     }
 
     private FeedEntries nextEntries() {
-        String feedText = httpClient.get(feedUrl());
-        return FeedEntries.create(feedText);
+        return httpClient.get(feedUrl(), FeedEntries.PARSER);
+    }
+
+    private FeedEntries entriesAfter(FeedEntries feedEntries) {
+        return httpClient.get(feedUrl(), UrlUtil.parametersFrom(feedEntries.getNextLink()), FeedEntries.PARSER);
     }
 
     private boolean matchesStage(String pipeline, String stage, FeedEntry entry) {
@@ -120,7 +135,7 @@ public abstract class AbstractTalkToGo implements TalkToGo {
         for (FeedEntry entry : entries) {
             if (entry.matchesPipeline(name)) {
                 Stage stage = stage(entry);
-                return stage.using(httpClient).getPipeline();
+                return stage.getPipeline();
             }
         }
         throw new RuntimeException(String.format("Cannot find the pipeline [%s]", name));
@@ -1,18 +1,35 @@
 package com.thoughtworks.go.domain;
 
+import com.thoughtworks.go.http.StreamingResponseParser;
+
 import static com.thoughtworks.go.util.XmlUtil.attrVal;
-import static com.thoughtworks.go.util.XmlUtil.parse;
+import static com.thoughtworks.go.util.XmlUtil.nodes;
+import static com.thoughtworks.go.util.XmlUtil.singleNode;
 import org.dom4j.Document;
 import org.dom4j.Element;
 
+import java.io.InputStream;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * @understands a collection of a FeedEntry
+ *
+ * A feed given as text or as a stream is read with a {@link FeedReader} in one pass. Use the reader directly to act on
+ * every entry as soon as it is read. {@link #PARSER} reads a page of the feed as it arrives from the Go server.
  */
-@SuppressWarnings("unchecked")
 public class FeedEntries {
+    public static final StreamingResponseParser<FeedEntries> PARSER = new StreamingResponseParser<FeedEntries>() {
+        public FeedEntries parse(String response) {
+            return create(response);
+        }
+
+        public FeedEntries handle(InputStream response) {
+            return create(response);
+        }
+    };
+
     private final List<FeedEntry> entries;
     private final String nextLink;
 
@@ -22,14 +39,34 @@ public class FeedEntries {
     }
 
     public static FeedEntries create(String feedXml) {
-        Document feedDoc = parse(feedXml);
-        Element nextLinkElement = (Element) feedDoc.selectSingleNode(".//a:link[@rel='next']");
+        return create(new FeedReader(new StringReader(feedXml)));
+    }
+
+    /**
+     * Reads the entries from the feed as it arrives, without building a document.
+     * @param feed stream of the feed xml
+     * @return the entries of the feed
+     */
+    public static FeedEntries create(InputStream feed) {
+        return create(new FeedReader(feed));
+    }
+
+    private static FeedEntries create(FeedReader reader) {
+        List<FeedEntry> entries = new ArrayList<FeedEntry>();
+        while (reader.hasNext()) {
+            entries.add(reader.next());
+        }
+        return new FeedEntries(entries, reader.getNextLink());
+    }
+
+    public static FeedEntries create(Document feedDoc) {
+        Element nextLinkElement = singleNode(feedDoc, ".//a:link[@rel='next']");
         return new FeedEntries(entries(feedDoc), nextLinkElement == null ? null : attrVal(nextLinkElement, "href"));
     }
 
     private static List<FeedEntry> entries(Document feedDoc) {
         List<FeedEntry> entries = new ArrayList<FeedEntry>();
-        List<Element> elements = (List<Element>)feedDoc.selectNodes("//a:entry");
+        List<Element> elements = nodes(feedDoc, "//a:entry");
         for (Element element : elements) {
             entries.add(FeedEntry.create(element));
         }
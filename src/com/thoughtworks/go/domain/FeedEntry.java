@@ -174,7 +174,7 @@ public class FeedEntry {
     }
 
     private static Element link(Element element) {
-        return (Element) element.selectSingleNode(".//a:link[@rel='alternate']");
+        return XmlUtil.singleNode(element, ".//a:link[@rel='alternate']");
     }
 
     @Override
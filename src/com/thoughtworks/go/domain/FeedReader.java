@@ -0,0 +1,155 @@
+package com.thoughtworks.go.domain;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * @understands reading the entries of a stage feed one at a time, as the feed is read
+ *
+ * The feed is pulled through a StAX parser in a single forward pass without building a document. An entry is only read
+ * when it is asked for, so a caller reading from a stream can act on the first entry while the rest of the page is still
+ * arriving. Entries are read the same way {@link FeedEntry#create(org.dom4j.Element)} reads them from a document.
+ */
+public class FeedReader implements Iterator<FeedEntry> {
+    private static final String ATOM = "http://www.w3.org/2005/Atom";
+    private static final XMLInputFactory FACTORY = factory();
+
+    private final XMLStreamReader reader;
+    private FeedEntry next;
+    private String nextLink;
+    private boolean finished;
+
+    public FeedReader(InputStream feed) {
+        try {
+            this.reader = FACTORY.createXMLStreamReader(feed);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public FeedReader(Reader feed) {
+        try {
+            this.reader = FACTORY.createXMLStreamReader(feed);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static XMLInputFactory factory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            next = readEntry();
+        }
+        return next != null;
+    }
+
+    public FeedEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        FeedEntry entry = next;
+        next = null;
+        return entry;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * The link to the next page of the feed. The Go server sends it ahead of the entries, but it is only known for
+     * certain once every entry has been read.
+     *
+     * @return the link to the next page or null if this is the last page
+     */
+    public String getNextLink() {
+        return nextLink;
+    }
+
+    private FeedEntry readEntry() {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT || !ATOM.equals(reader.getNamespaceURI())) {
+                    continue;
+                }
+                if ("entry".equals(reader.getLocalName())) {
+                    return entry();
+                }
+                if ("link".equals(reader.getLocalName())) {
+                    nextLink(reader.getAttributeValue(null, "rel"));
+                }
+            }
+            finished = true;
+            reader.close();
+            return null;
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private FeedEntry entry() throws XMLStreamException {
+        String title = null;
+        String updatedDate = null;
+        String id = null;
+        String resourceLink = null;
+        List<String> authors = new ArrayList<String>();
+        List<FeedEntry.CardDetail> cardDetails = new ArrayList<FeedEntry.CardDetail>();
+        List<String> open = new ArrayList<String>();
+        open.add("entry");
+        while (!open.isEmpty()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                open.remove(open.size() - 1);
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String name = ATOM.equals(reader.getNamespaceURI()) ? reader.getLocalName() : "";
+            String parent = open.get(open.size() - 1);
+            if (name.equals("title") && title == null) {
+                title = reader.getElementText();
+            } else if (name.equals("updated") && updatedDate == null) {
+                updatedDate = reader.getElementText();
+            } else if (name.equals("id") && id == null) {
+                id = reader.getElementText();
+            } else if (name.equals("name") && parent.equals("author")) {
+                authors.add(reader.getElementText().trim());
+            } else {
+                if (name.equals("link")) {
+                    String rel = reader.getAttributeValue(null, "rel");
+                    if ("alternate".equals(rel) && resourceLink == null) {
+                        resourceLink = reader.getAttributeValue(null, "href");
+                    }
+                    if ("application/vnd.mingle+xml".equals(reader.getAttributeValue(null, "type"))) {
+                        cardDetails.add(new FeedEntry.CardDetail(reader.getAttributeValue(null, "href"), reader.getAttributeValue(null, "title")));
+                    }
+                    nextLink(rel);
+                }
+                open.add(name);
+            }
+        }
+        return new FeedEntry(title, updatedDate, id, resourceLink, authors, cardDetails);
+    }
+
+    private void nextLink(String rel) {
+        if (nextLink == null && "next".equals(rel)) {
+            nextLink = reader.getAttributeValue(null, "href");
+        }
+    }
+}
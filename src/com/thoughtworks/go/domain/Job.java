@@ -2,15 +2,23 @@ package com.thoughtworks.go.domain;
 
 import static com.thoughtworks.go.util.XmlUtil.*;
 
+import com.thoughtworks.go.http.StreamingResponseParser;
 import com.thoughtworks.go.util.DateUtil;
+import com.thoughtworks.go.util.ElementWalker;
+import com.thoughtworks.go.util.SystemEnvironment;
+import com.thoughtworks.go.util.XmlUtil;
 import org.dom4j.Document;
 import org.dom4j.Element;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * @understands a Go job instance.
+ *
+ * When {@link SystemEnvironment#shouldParseLazily()} is on, the properties, resources and environment variables are
+ * only decoded once they are needed. Until then the job holds on to its document.
  */
 public class Job {
     private final String name;
@@ -19,9 +27,9 @@ public class Job {
     private final String state;
     private final String result;
     private final String agentUUID;
-    private final List<Property> properties;
-    private final List<Resource> resources;
-    private final List<EnvVariable> envVariables;
+    private final LazySection<List<Property>> properties;
+    private final LazySection<List<Resource>> resources;
+    private final LazySection<List<EnvVariable>> envVariables;
 
     /**
      * The name of the property that gives the date time when the job was scheduled
@@ -53,7 +61,7 @@ public class Job {
      */
     public static final String COMPLETED_TIMESTAMP = "cruise_timestamp_06_completed";
 
-    private Job(String name, JobPipeline jobPipeline, JobStage jobStage, String state, String result, String agentUUID, List<Property> properties, List<Resource> resources, List<EnvVariable> envVariables) {
+    private Job(String name, JobPipeline jobPipeline, JobStage jobStage, String state, String result, String agentUUID, LazySection<List<Property>> properties, LazySection<List<Resource>> resources, LazySection<List<EnvVariable>> envVariables) {
         this.name = name;
         this.jobPipeline = jobPipeline;
         this.jobStage = jobStage;
@@ -65,45 +73,135 @@ public class Job {
         this.envVariables = envVariables;
     }
 
-    public static Job create(String resource) {
-        Document doc = parse(resource);
-        String name = attrVal(singleNode(doc, "/job"), "name");
+    public static final StreamingResponseParser<Job> PARSER = new StreamingResponseParser<Job>() {
+        public Job parse(String response) {
+            return create(response);
+        }
 
-        Element pipeline = singleNode(doc, "//pipeline");
-        JobPipeline jobPipeline = new JobPipeline(attrVal(pipeline, "name"), Integer.parseInt(attrVal(pipeline, "counter")), attrVal(pipeline, "label"));
+        public Job handle(InputStream response) {
+            return create(XmlUtil.parse(response));
+        }
+    };
 
-        Element stage = singleNode(doc, "//stage");
-        JobStage jobStage = new JobStage(attrVal(stage, "name"), Integer.parseInt(attrVal(stage, "counter")), attrVal(stage, "href"));
+    public static Job create(String resource) {
+        return create(parse(resource));
+    }
 
-        String state = nodeText(doc, "//state");
-        String result = nodeText(doc, "//result");
+    public static Job create(Document doc) {
+        return create(doc, SystemEnvironment.shouldParseLazily());
+    }
 
-        String agentUUID = attrVal(singleNode(doc, "//agent"), "uuid");
-        return new Job(name, jobPipeline, jobStage, state, result, agentUUID, properties(doc), resources(doc), envVars(doc));
+    static Job create(Document doc, boolean lazily) {
+        Element root = doc.getRootElement();
+        Binder binder = new Binder(lazily);
+        binder.walk(root);
+        return new Job(attrVal(root, "name"), binder.jobPipeline, binder.jobStage, binder.state, binder.result, binder.agentUUID,
+                binder.properties(), binder.resources(), binder.envVariables());
     }
 
-    private static List<EnvVariable> envVars(Document doc) {
+    /**
+     * Picks the fields of a job out of its document in one pass. When lazy, it skips the properties, resources and
+     * environment variables and remembers where they are instead.
+     */
+    private static class Binder extends ElementWalker {
+        final boolean lazily;
+        JobPipeline jobPipeline;
+        JobStage jobStage;
+        String state;
+        String result;
+        String agentUUID;
+        List<Property> properties = new ArrayList<Property>();
+        List<Resource> resources = new ArrayList<Resource>();
         List<EnvVariable> envVariables = new ArrayList<EnvVariable>();
-        for (Element element : nodes(doc, "//variable")) {
-            envVariables.add(new EnvVariable(attrVal(element, "name"), element.getText()));
+        Element propertiesSection;
+        Element resourcesSection;
+        Element envVariablesSection;
+
+        Binder(boolean lazily) {
+            this.lazily = lazily;
         }
-        return envVariables;
-    }
 
-    private static List<Resource> resources(Document doc) {
-        List<Resource> resources = new ArrayList<Resource>();
-        for (Element element : nodes(doc, "//resource")) {
-            resources.add(new Resource(element.getText()));
+        private static Binder decode(Element section) {
+            Binder binder = new Binder(false);
+            binder.walk(section);
+            return binder;
         }
-        return resources;
-    }
 
-    private static List<Property> properties(Document doc) {
-        List<Property> properties = new ArrayList<Property>();
-        for (Element element : nodes(doc, "//property")) {
-            properties.add(new Property(attrVal(element, "name"), element.getText()));
+        @Override
+        protected boolean descend(Element element) {
+            if (!lazily) {
+                return true;
+            }
+            String name = element.getName();
+            if (name.equals("properties")) {
+                propertiesSection = element;
+            } else if (name.equals("resources")) {
+                resourcesSection = element;
+            } else if (name.equals("environmentvariables")) {
+                envVariablesSection = element;
+            } else {
+                return true;
+            }
+            return false;
+        }
+
+        LazySection<List<Property>> properties() {
+            if (propertiesSection == null) {
+                return LazySection.decoded(properties);
+            }
+            return new LazySection<List<Property>>(propertiesSection) {
+                @Override
+                protected List<Property> decode(Element section) {
+                    return Binder.decode(section).properties;
+                }
+            };
+        }
+
+        LazySection<List<Resource>> resources() {
+            if (resourcesSection == null) {
+                return LazySection.decoded(resources);
+            }
+            return new LazySection<List<Resource>>(resourcesSection) {
+                @Override
+                protected List<Resource> decode(Element section) {
+                    return Binder.decode(section).resources;
+                }
+            };
+        }
+
+        LazySection<List<EnvVariable>> envVariables() {
+            if (envVariablesSection == null) {
+                return LazySection.decoded(envVariables);
+            }
+            return new LazySection<List<EnvVariable>>(envVariablesSection) {
+                @Override
+                protected List<EnvVariable> decode(Element section) {
+                    return Binder.decode(section).envVariables;
+                }
+            };
+        }
+
+        @Override
+        protected void start(Element element) {
+            String name = element.getName();
+            if (name.equals("pipeline") && jobPipeline == null) {
+                jobPipeline = new JobPipeline(attrVal(element, "name"), Integer.parseInt(attrVal(element, "counter")), attrVal(element, "label"));
+            } else if (name.equals("stage") && jobStage == null) {
+                jobStage = new JobStage(attrVal(element, "name"), Integer.parseInt(attrVal(element, "counter")), attrVal(element, "href"));
+            } else if (name.equals("state")) {
+                state = first(state, element);
+            } else if (name.equals("result")) {
+                result = first(result, element);
+            } else if (name.equals("agent") && agentUUID == null) {
+                agentUUID = attrVal(element, "uuid");
+            } else if (name.equals("property")) {
+                properties.add(new Property(attrVal(element, "name"), element.getText()));
+            } else if (name.equals("resource")) {
+                resources.add(new Resource(element.getText()));
+            } else if (name.equals("variable")) {
+                envVariables.add(new EnvVariable(attrVal(element, "name"), element.getText()));
+            }
         }
-        return properties;
     }
 
     /**
@@ -184,7 +282,7 @@ public class Job {
      * @return the list of all the properties.
      */
     public List<Property> getProperties() {
-        return properties;
+        return properties.get();
     }
 
     /**
@@ -193,7 +291,7 @@ public class Job {
      * @return The list of all the resources.
      */
     public List<Resource> getResources() {
-        return resources;
+        return resources.get();
     }
 
     /**
@@ -203,7 +301,7 @@ public class Job {
      * @return the list of all the environment variables.
      */
     public List<EnvVariable> getEnvVariables() {
-        return envVariables;
+        return envVariables.get();
     }
 
     /**
@@ -243,7 +341,7 @@ public class Job {
     }
 
     private Property property(String propertyName) {
-        for (Property property : properties) {
+        for (Property property : properties.get()) {
             if (property.name.equals(propertyName)) {
                 return property;
             }
@@ -445,8 +543,8 @@ public class Job {
         if (jobPipeline != null ? !jobPipeline.equals(job.jobPipeline) : job.jobPipeline != null) return false;
         if (jobStage != null ? !jobStage.equals(job.jobStage) : job.jobStage != null) return false;
         if (name != null ? !name.equals(job.name) : job.name != null) return false;
-        if (properties != null ? !properties.equals(job.properties) : job.properties != null) return false;
-        if (resources != null ? !resources.equals(job.resources) : job.resources != null) return false;
+        if (!properties.get().equals(job.properties.get())) return false;
+        if (!resources.get().equals(job.resources.get())) return false;
         if (result != null ? !result.equals(job.result) : job.result != null) return false;
         if (state != null ? !state.equals(job.state) : job.state != null) return false;
 
@@ -461,8 +559,8 @@ public class Job {
         result1 = 31 * result1 + (state != null ? state.hashCode() : 0);
         result1 = 31 * result1 + (result != null ? result.hashCode() : 0);
         result1 = 31 * result1 + (agentUUID != null ? agentUUID.hashCode() : 0);
-        result1 = 31 * result1 + (properties != null ? properties.hashCode() : 0);
-        result1 = 31 * result1 + (resources != null ? resources.hashCode() : 0);
+        result1 = 31 * result1 + properties.get().hashCode();
+        result1 = 31 * result1 + resources.get().hashCode();
         return result1;
     }
 }
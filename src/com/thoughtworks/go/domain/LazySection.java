@@ -0,0 +1,46 @@
+package com.thoughtworks.go.domain;
+
+import org.dom4j.Element;
+
+/**
+ * @understands a part of a document that is only decoded the first time it is asked for
+ *
+ * A section keeps a copy of its element, cut loose from the document, so that the rest of the document can be freed
+ * while the section waits to be decoded. The copy is let go once the section is decoded. Sections are decoded at most
+ * once, even when asked for from several threads at once.
+ */
+abstract class LazySection<T> {
+    private Element section;
+    private T value;
+
+    LazySection(Element section) {
+        this.section = section == null ? null : section.createCopy();
+    }
+
+    /**
+     * Returns a section that was decoded up front.
+     *
+     * @param value the decoded section
+     * @return the section
+     */
+    static <T> LazySection<T> decoded(T value) {
+        LazySection<T> decoded = new LazySection<T>(null) {
+            @Override
+            protected T decode(Element section) {
+                throw new IllegalStateException("The section was decoded up front");
+            }
+        };
+        decoded.value = value;
+        return decoded;
+    }
+
+    synchronized T get() {
+        if (section != null) {
+            value = decode(section);
+            section = null;
+        }
+        return value;
+    }
+
+    protected abstract T decode(Element section);
+}
@@ -1,8 +1,8 @@
 package com.thoughtworks.go.domain;
 
-import com.thoughtworks.go.util.XmlUtil;
+import com.thoughtworks.go.util.ElementWalker;
+import com.thoughtworks.go.util.SystemEnvironment;
 import static com.thoughtworks.go.util.XmlUtil.*;
-import org.dom4j.Document;
 import org.dom4j.Element;
 
 import java.util.ArrayList;
@@ -12,6 +12,9 @@ import java.util.List;
  * @understands a material instance associated with a Pipeline Instance.
  *
  * This is an aggregation of all the changes that went into a pipeline for the given material tag inside a pipeline.
+ *
+ * When {@link SystemEnvironment#shouldParseLazily()} is on, the changes are only decoded once they are needed. Until
+ * then the material holds on to its document.
  */
 public class Material {
     private final String type;
@@ -19,10 +22,10 @@ public class Material {
     private final String username;
     private final String pipelineName;
     private final String stageName;
-    private final List<Change> changes;
+    private final LazySection<List<Change>> changes;
     private String checkExternals;
 
-    private Material(String type, String url, String username, String checkExternals, String pipelineName, String stageName, List<Change> changes) {
+    private Material(String type, String url, String username, String checkExternals, String pipelineName, String stageName, LazySection<List<Change>> changes) {
         this.type = type;
         this.url = url;
         this.username = username;
@@ -33,19 +36,82 @@ public class Material {
     }
 
     public static Material create(String materialXml) {
-        Document doc = parse(materialXml);
-        String type = attrVal(singleNode(doc, "/material"), "type");
-        String username = XmlUtil.attrVal(singleNode(doc, "/material"), "username", null);
-        String pipelineName = attrVal(singleNode(doc, "/material"), "pipelineName", null);
-        String stageName = attrVal(singleNode(doc, "/material"), "stageName", null);
-        String checkExternals = attrVal(singleNode(doc, "/material"), "checkExternals", null);
-        String url = attrVal(singleNode(doc, "/material"), "url", null);
+        return create(parse(materialXml).getRootElement());
+    }
+
+    /**
+     * Builds the material straight from its element in a document that has already been parsed.
+     *
+     * @param material the material element
+     * @return the material
+     */
+    public static Material create(Element material) {
+        return create(material, SystemEnvironment.shouldParseLazily());
+    }
+
+    static Material create(Element material, boolean lazily) {
+        if (!lazily) {
+            Binder binder = new Binder();
+            binder.walk(material);
+            return binder.material(material);
+        }
+        return create(material, new LazySection<List<Change>>(material) {
+            @Override
+            protected List<Change> decode(Element section) {
+                Binder binder = new Binder();
+                binder.walk(section);
+                return binder.changes;
+            }
+        });
+    }
+
+    private static Material create(Element root, LazySection<List<Change>> changes) {
+        return new Material(attrVal(root, "type"), attrVal(root, "url", null), attrVal(root, "username", null), attrVal(root, "checkExternals", null),
+                attrVal(root, "pipelineName", null), attrVal(root, "stageName", null), changes);
+    }
+
+    /**
+     * Picks the change sets of a material out of its element in one pass. A {@link Pipeline} feeds it the elements of
+     * each of its materials while it walks its own document.
+     */
+    static class Binder extends ElementWalker {
         List<Change> changes = new ArrayList<Change>();
-        List<Element> changeElements = XmlUtil.nodes(doc, "//changeset");
-        for (Element changeElement : changeElements) {
-            changes.add(new Change(nodeText(changeElement, ".//user"), nodeText(changeElement, ".//checkinTime"), nodeText(changeElement, ".//revision"), nodeText(changeElement, ".//message")));
+        boolean inChangeset;
+        String user;
+        String checkinTime;
+        String revision;
+        String message;
+
+        @Override
+        protected void start(Element element) {
+            String name = element.getName();
+            if (name.equals("changeset")) {
+                inChangeset = true;
+                user = checkinTime = revision = message = null;
+            } else if (!inChangeset) {
+                return;
+            } else if (name.equals("user")) {
+                user = first(user, element);
+            } else if (name.equals("checkinTime")) {
+                checkinTime = first(checkinTime, element);
+            } else if (name.equals("revision")) {
+                revision = first(revision, element);
+            } else if (name.equals("message")) {
+                message = first(message, element);
+            }
+        }
+
+        @Override
+        protected void end(Element element) {
+            if (element.getName().equals("changeset")) {
+                changes.add(new Change(user, checkinTime, revision, message));
+                inChangeset = false;
+            }
+        }
+
+        Material material(Element root) {
+            return create(root, LazySection.decoded(changes));
         }
-        return new Material(type, url, username, checkExternals, pipelineName, stageName, changes);
     }
 
     /**
@@ -77,7 +143,7 @@ public class Material {
      * @return a list of change sets for a given material
      */
     public List<Change> getChanges() {
-        return changes;
+        return changes.get();
     }
 
     /**
@@ -193,7 +259,7 @@ public class Material {
 
         Material material = (Material) o;
 
-        if (changes != null ? !changes.equals(material.changes) : material.changes != null) return false;
+        if (!changes.get().equals(material.changes.get())) return false;
         if (checkExternals != null ? !checkExternals.equals(material.checkExternals) : material.checkExternals != null)
             return false;
         if (pipelineName != null ? !pipelineName.equals(material.pipelineName) : material.pipelineName != null)
@@ -213,7 +279,7 @@ public class Material {
         result = 31 * result + (username != null ? username.hashCode() : 0);
         result = 31 * result + (pipelineName != null ? pipelineName.hashCode() : 0);
         result = 31 * result + (stageName != null ? stageName.hashCode() : 0);
-        result = 31 * result + (changes != null ? changes.hashCode() : 0);
+        result = 31 * result + changes.get().hashCode();
         result = 31 * result + (checkExternals != null ? checkExternals.hashCode() : 0);
         return result;
     }
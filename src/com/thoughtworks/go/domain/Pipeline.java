@@ -1,9 +1,14 @@
 package com.thoughtworks.go.domain;
 
 import com.thoughtworks.go.http.HttpClientWrapper;
+import com.thoughtworks.go.http.StreamingResponseParser;
+import com.thoughtworks.go.util.ElementWalker;
+import com.thoughtworks.go.util.SystemEnvironment;
+import com.thoughtworks.go.util.XmlUtil;
 import org.dom4j.Document;
 import org.dom4j.Element;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,6 +17,12 @@ import static com.thoughtworks.go.util.XmlUtil.*;
 
 /**
  * @understands an instance of a Go Pipeline
+ *
+ * When {@link SystemEnvironment#shouldParseLazily()} is on, the links to the stages and the changes of every material
+ * are only decoded once they are needed. Until then the pipeline holds on to its document.
+ *
+ * A pipeline never changes once it is created, as the same instance is handed to everyone who asks for the same
+ * response. Binding it to a client with {@link #using(HttpClientWrapper)} returns a copy.
  */
 public class Pipeline {
     private final String name;
@@ -19,11 +30,11 @@ public class Pipeline {
     private final String label;
     private final String scheduleTime;
     private final List<Material> materials;
-    private final List<PipelineStage> pipelineStages;
+    private final LazySection<List<PipelineStage>> pipelineStages;
     private final String approvedBy;
-    private HttpClientWrapper httpClientWrapper;
+    private final HttpClientWrapper httpClientWrapper;
 
-    private Pipeline(String name, int counter, String label, String scheduleTime, List<Material> materials, List<PipelineStage> pipelineStages, String approvedBy) {
+    private Pipeline(String name, int counter, String label, String scheduleTime, List<Material> materials, LazySection<List<PipelineStage>> pipelineStages, String approvedBy, HttpClientWrapper httpClientWrapper) {
         this.name = name;
         this.counter = counter;
         this.label = label;
@@ -31,32 +42,115 @@ public class Pipeline {
         this.materials = materials;
         this.pipelineStages = pipelineStages;
         this.approvedBy = approvedBy;
+        this.httpClientWrapper = httpClientWrapper;
     }
 
+    public static final StreamingResponseParser<Pipeline> PARSER = new StreamingResponseParser<Pipeline>() {
+        public Pipeline parse(String response) {
+            return create(response);
+        }
+
+        public Pipeline handle(InputStream response) {
+            return create(XmlUtil.parse(response));
+        }
+    };
+
     public static Pipeline create(String pipelineResource) {
-        Document doc = parse(pipelineResource);
-        String name = attrVal(singleNode(doc, "/pipeline"), "name");
-        String counter = attrVal(singleNode(doc, "/pipeline"), "counter");
-        String label = attrVal(singleNode(doc, "/pipeline"), "label");
-        String scheduleTime = nodeText(doc, "//scheduleTime");
-        String approvedBy = nodeText(doc, "//approvedBy");
-        return new Pipeline(name, Integer.parseInt(counter), label, scheduleTime, materials(doc), stages(doc), approvedBy);
+        return create(parse(pipelineResource));
     }
 
-    private static List<Material> materials(Document doc) {
-        List<Material> materials = new ArrayList<Material>();
-        for (Element material : nodes(doc, "//material")) {
-            materials.add(Material.create(material.asXML()));
-        }
-        return materials;
+    public static Pipeline create(Document doc) {
+        return create(doc, SystemEnvironment.shouldParseLazily());
     }
 
-    private static List<PipelineStage> stages(Document doc) {
+    static Pipeline create(Document doc, boolean lazily) {
+        Element root = doc.getRootElement();
+        Binder binder = new Binder(lazily);
+        binder.walk(root);
+        return new Pipeline(attrVal(root, "name"), Integer.parseInt(attrVal(root, "counter")), attrVal(root, "label"), binder.scheduleTime,
+                binder.materials, binder.pipelineStages(), binder.approvedBy, null);
+    }
+
+    /**
+     * Picks the fields of a pipeline out of its document in one pass. The elements of a material are handed to a
+     * {@link Material.Binder} on the way, so materials are built from the same walk. When lazy, it skips the changes
+     * of the materials and the stages and remembers where they are instead.
+     */
+    private static class Binder extends ElementWalker {
+        final boolean lazily;
+        String scheduleTime;
+        String approvedBy;
+        List<Material> materials = new ArrayList<Material>();
         List<PipelineStage> pipelineStages = new ArrayList<PipelineStage>();
-        for (Element stageElement : nodes(doc, "//stage")) {
-            pipelineStages.add(new PipelineStage(attrVal(stageElement, "href")));
+        Element materialElement;
+        Material.Binder material;
+        Element stages;
+
+        Binder(boolean lazily) {
+            this.lazily = lazily;
+        }
+
+        @Override
+        protected boolean descend(Element element) {
+            if (!lazily) {
+                return true;
+            }
+            String name = element.getName();
+            if (name.equals("material")) {
+                materials.add(Material.create(element, true));
+            } else if (name.equals("stages")) {
+                stages = element;
+            } else {
+                return true;
+            }
+            return false;
+        }
+
+        LazySection<List<PipelineStage>> pipelineStages() {
+            if (stages == null) {
+                return LazySection.decoded(pipelineStages);
+            }
+            return new LazySection<List<PipelineStage>>(stages) {
+                @Override
+                protected List<PipelineStage> decode(Element section) {
+                    Binder binder = new Binder(false);
+                    binder.walk(section);
+                    return binder.pipelineStages;
+                }
+            };
+        }
+
+        @Override
+        protected void start(Element element) {
+            String name = element.getName();
+            if (material != null) {
+                material.start(element);
+            } else if (name.equals("material") && !lazily) {
+                materialElement = element;
+                material = new Material.Binder();
+                material.start(element);
+            }
+            if (name.equals("scheduleTime")) {
+                scheduleTime = first(scheduleTime, element);
+            } else if (name.equals("approvedBy")) {
+                approvedBy = first(approvedBy, element);
+            } else if (name.equals("stage")) {
+                pipelineStages.add(new PipelineStage(attrVal(element, "href")));
+            }
+        }
+
+        @Override
+        protected void end(Element element) {
+            if (material == null) {
+                return;
+            }
+            material.end(element);
+            if (element == materialElement) {
+                materials.add(material.material(element));
+                material = null;
+                materialElement = null;
+            }
         }
-        return pipelineStages;
     }
 
     /**
@@ -118,24 +212,32 @@ public class Pipeline {
      * Returns all the stage instances which belong to this pipeline. This call hits the Go server to fetch all the stage
      * resources and return them as objects.
      *
-     * This call is not cached since the stage resource could have changed i.e.
-     * when this call is made a stage could still be building.
+     * This call hits the Go server every time since the stage resource could have changed i.e.
+     * when this call is made a stage could still be building. A stage is only parsed again if it did change. All the
+     * stage resources are requested concurrently.
      *
      * @return the list of all stage instances in this pipeline
      */
     public List<Stage> getStages() {
+        List<String> stageLinks = new ArrayList<String>();
+        for (PipelineStage pipelineStage : pipelineStages.get()) {
+            stageLinks.add(scrub(pipelineStage.stageLink, "/api/stages"));
+        }
         List<Stage> stages = new ArrayList<Stage>();
-        for (PipelineStage pipelineStage : pipelineStages) {
-            Stage stage = Stage.create(httpClientWrapper.get(scrub(pipelineStage.stageLink, "/api/stages")));
-            stage.using(httpClientWrapper);
-            stages.add(stage);
+        for (Stage stage : httpClientWrapper.getAll(stageLinks, Stage.PARSER)) {
+            stages.add(stage.using(httpClientWrapper));
         }
         return stages;
     }
 
+    /**
+     * Returns a copy of this pipeline that fetches its stages with the given client. This pipeline is left as it is.
+     *
+     * @param client the client to talk to the Go server with
+     * @return the pipeline bound to the client
+     */
     public Pipeline using(HttpClientWrapper client) {
-        this.httpClientWrapper = client;
-        return this;
+        return new Pipeline(name, counter, label, scheduleTime, materials, pipelineStages, approvedBy, client);
     }
 
     private static class PipelineStage {
@@ -182,8 +284,7 @@ public class Pipeline {
         if (label != null ? !label.equals(pipeline.label) : pipeline.label != null) return false;
         if (materials != null ? !materials.equals(pipeline.materials) : pipeline.materials != null) return false;
         if (name != null ? !name.equals(pipeline.name) : pipeline.name != null) return false;
-        if (pipelineStages != null ? !pipelineStages.equals(pipeline.pipelineStages) : pipeline.pipelineStages != null)
-            return false;
+        if (!pipelineStages.get().equals(pipeline.pipelineStages.get())) return false;
         if (scheduleTime != null ? !scheduleTime.equals(pipeline.scheduleTime) : pipeline.scheduleTime != null)
             return false;
 
@@ -197,7 +298,7 @@ public class Pipeline {
         result = 31 * result + (label != null ? label.hashCode() : 0);
         result = 31 * result + (scheduleTime != null ? scheduleTime.hashCode() : 0);
         result = 31 * result + (materials != null ? materials.hashCode() : 0);
-        result = 31 * result + (pipelineStages != null ? pipelineStages.hashCode() : 0);
+        result = 31 * result + pipelineStages.get().hashCode();
         result = 31 * result + (approvedBy != null ? approvedBy.hashCode() : 0);
         return result;
     }
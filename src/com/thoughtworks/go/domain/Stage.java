@@ -1,11 +1,15 @@
 package com.thoughtworks.go.domain;
 
 import com.thoughtworks.go.http.HttpClientWrapper;
+import com.thoughtworks.go.http.StreamingResponseParser;
 import com.thoughtworks.go.util.DateUtil;
+import com.thoughtworks.go.util.ElementWalker;
+import com.thoughtworks.go.util.SystemEnvironment;
 import com.thoughtworks.go.util.XmlUtil;
 import org.dom4j.Document;
 import org.dom4j.Element;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -15,6 +19,12 @@ import static com.thoughtworks.go.util.XmlUtil.*;
 
 /**
  * @understands an instance of a Go stage
+ *
+ * When {@link SystemEnvironment#shouldParseLazily()} is on, the links to the jobs are only decoded once they are
+ * needed. Until then the stage holds on to its document.
+ *
+ * A stage never changes once it is created, as the same instance is handed to everyone who asks for the same response.
+ * Binding it to a client with {@link #using(HttpClientWrapper)} returns a copy.
  */
 public class Stage {
     private final String name;
@@ -24,10 +34,10 @@ public class Stage {
     private final String result;
     private final String state;
     private final String approvedBy;
-    private final List<StageJob> stageJobs;
-    private HttpClientWrapper httpClientWrapper;
+    private final LazySection<List<StageJob>> stageJobs;
+    private final HttpClientWrapper httpClientWrapper;
 
-    private Stage(String name, int counter, StagePipeline pipeline, Date lastUpdated, String result, String state, String approvedBy, List<StageJob> stageJobs) {
+    private Stage(String name, int counter, StagePipeline pipeline, Date lastUpdated, String result, String state, String approvedBy, LazySection<List<StageJob>> stageJobs, HttpClientWrapper httpClientWrapper) {
         this.name = name;
         this.counter = counter;
         this.pipeline = pipeline;
@@ -36,29 +46,93 @@ public class Stage {
         this.state = state;
         this.approvedBy = approvedBy;
         this.stageJobs = stageJobs;
+        this.httpClientWrapper = httpClientWrapper;
     }
 
+    public static final StreamingResponseParser<Stage> PARSER = new StreamingResponseParser<Stage>() {
+        public Stage parse(String response) {
+            return create(response);
+        }
+
+        public Stage handle(InputStream response) {
+            return create(XmlUtil.parse(response));
+        }
+    };
+
     public static Stage create(String resourceText) {
-        Document doc = parse(resourceText);
-        String name = attrVal(singleNode(doc, "/stage"), "name");
-        String counter = attrVal(singleNode(doc, "/stage"), "counter");
-        Element pipeline = singleNode(doc, "//pipeline");
-        StagePipeline pip = new StagePipeline(attrVal(pipeline, "name"), attrVal(pipeline, "counter"), attrVal(pipeline, "label"), attrVal(pipeline, "href"));
-        Date lastUpdated = DateUtil.toDate(nodeText(doc, "//updated"));
-        String result = nodeText(doc, "//result");
-        String state = nodeText(doc, "//state");
-        String approvedBy = nodeText(doc, "//approvedBy");
-        List<StageJob> stageJobs = stageJobs(doc);
-        return new Stage(name, Integer.parseInt(counter), pip, lastUpdated, result, state, approvedBy, stageJobs);
+        return create(parse(resourceText));
+    }
+
+    public static Stage create(Document doc) {
+        return create(doc, SystemEnvironment.shouldParseLazily());
     }
 
-    private static List<StageJob> stageJobs(Document doc) {
+    static Stage create(Document doc, boolean lazily) {
+        Element root = doc.getRootElement();
+        Binder binder = new Binder(lazily);
+        binder.walk(root);
+        return new Stage(attrVal(root, "name"), Integer.parseInt(attrVal(root, "counter")), binder.pipeline, DateUtil.toDate(binder.updated),
+                binder.result, binder.state, binder.approvedBy, binder.stageJobs(), null);
+    }
+
+    /**
+     * Picks the fields of a stage out of its document in one pass. When lazy, it skips the jobs and remembers where they
+     * are instead.
+     */
+    private static class Binder extends ElementWalker {
+        final boolean lazily;
+        StagePipeline pipeline;
+        String updated;
+        String result;
+        String state;
+        String approvedBy;
         List<StageJob> stageJobs = new ArrayList<StageJob>();
-        List<Element> jobs = XmlUtil.nodes(doc, "//job");
-        for (Element stageJob : jobs) {
-            stageJobs.add(new StageJob(attrVal(stageJob, "href")));
+        Element jobs;
+
+        Binder(boolean lazily) {
+            this.lazily = lazily;
+        }
+
+        @Override
+        protected boolean descend(Element element) {
+            if (lazily && element.getName().equals("jobs")) {
+                jobs = element;
+                return false;
+            }
+            return true;
+        }
+
+        LazySection<List<StageJob>> stageJobs() {
+            if (jobs == null) {
+                return LazySection.decoded(stageJobs);
+            }
+            return new LazySection<List<StageJob>>(jobs) {
+                @Override
+                protected List<StageJob> decode(Element section) {
+                    Binder binder = new Binder(false);
+                    binder.walk(section);
+                    return binder.stageJobs;
+                }
+            };
+        }
+
+        @Override
+        protected void start(Element element) {
+            String name = element.getName();
+            if (name.equals("pipeline") && pipeline == null) {
+                pipeline = new StagePipeline(attrVal(element, "name"), attrVal(element, "counter"), attrVal(element, "label"), attrVal(element, "href"));
+            } else if (name.equals("updated")) {
+                updated = first(updated, element);
+            } else if (name.equals("result")) {
+                result = first(result, element);
+            } else if (name.equals("state")) {
+                state = first(state, element);
+            } else if (name.equals("approvedBy")) {
+                approvedBy = first(approvedBy, element);
+            } else if (name.equals("job")) {
+                stageJobs.add(new StageJob(attrVal(element, "href")));
+            }
         }
-        return stageJobs;
     }
 
     /**
@@ -152,27 +226,33 @@ public class Stage {
         return approvedBy;
     }
 
+    /**
+     * Returns a copy of this stage that fetches its jobs and pipeline with the given client. This stage is left as it is.
+     *
+     * @param httpClientWrapper the client to talk to the Go server with
+     * @return the stage bound to the client
+     */
     public Stage using(HttpClientWrapper httpClientWrapper) {
-        this.httpClientWrapper = httpClientWrapper;
-        return this;
+        return new Stage(name, counter, pipeline, lastUpdated, result, state, approvedBy, stageJobs, httpClientWrapper);
     }
 
     /**
      * Returns the list of all the jobs that belong to this stage. This call hits the Go server to fetch all the job
      * resources that belong to this stage instance.
      * <br/><br/>
-     * This call does not cache the returned job instances and hence hits the Go server every time this method is called.
-     * This is done since the job resource under the hood might have changed with new updates.
+     * This call hits the Go server every time this method is called, since the job resource under the hood might have
+     * changed with new updates. A job is only parsed again if it did change. All the job resources are requested
+     * concurrently.
      *
      * @return the list of all the jobs that belong to this stage instance.
      */
     public List<Job> getJobs() {
         ensureClientIsSet();
-        List<Job> jobs = new ArrayList<Job>();
-        for (StageJob stageJob : this.stageJobs) {
-            jobs.add(Job.create(httpClientWrapper.get(scrub(stageJob.jobLink, "/api/jobs"))));
+        List<String> jobLinks = new ArrayList<String>();
+        for (StageJob stageJob : this.stageJobs.get()) {
+            jobLinks.add(scrub(stageJob.jobLink, "/api/jobs"));
         }
-        return jobs;
+        return httpClientWrapper.getAll(jobLinks, Job.PARSER);
     }
 
     private void ensureClientIsSet() {
@@ -191,7 +271,7 @@ public class Stage {
      */
     public Pipeline getPipeline() {
         ensureClientIsSet();
-        return Pipeline.create(httpClientWrapper.get(scrub(pipeline.pipelineLink, "/api/pipelines")));
+        return httpClientWrapper.get(scrub(pipeline.pipelineLink, "/api/pipelines"), Pipeline.PARSER).using(httpClientWrapper);
     }
 
     /**
@@ -294,7 +374,6 @@ public class Stage {
         if (name != null ? !name.equals(stage.name) : stage.name != null) return false;
         if (pipeline != null ? !pipeline.equals(stage.pipeline) : stage.pipeline != null) return false;
         if (result != null ? !result.equals(stage.result) : stage.result != null) return false;
-        if (stageJobs != null ? !stageJobs.equals(stage.stageJobs) : stage.stageJobs != null) return false;
         if (state != null ? !state.equals(stage.state) : stage.state != null) return false;
 
         return true;
@@ -309,7 +388,6 @@ public class Stage {
         result = 31 * result + (this.result != null ? this.result.hashCode() : 0);
         result = 31 * result + (state != null ? state.hashCode() : 0);
         result = 31 * result + (approvedBy != null ? approvedBy.hashCode() : 0);
-        result = 31 * result + (stageJobs != null ? stageJobs.hashCode() : 0);
         return result;
     }
 }
@@ -0,0 +1,70 @@
+package com.thoughtworks.go.http;
+
+/**
+ * @understands backing off when the Go server struggles to keep up
+ *
+ * The number of requests allowed in flight grows by one for every window of requests that complete quickly and
+ * successfully, and is halved whenever a request fails on the server or 95% of the recent requests are no longer quick
+ * (additive increase, multiplicative decrease). A single slow request, such as one for a large resource, is not enough to
+ * back off, and the limit is halved for slowness at most once per window so that the same slow requests are not counted
+ * twice. It never drops below one or grows beyond the maximum.
+ */
+public class AdaptiveConcurrencyLimit {
+    private static final int WINDOW = 20;
+
+    private final int maxLimit;
+    private final long latencyThresholdMillis;
+    private final LatencyTracker latencies = new LatencyTracker(WINDOW, WINDOW);
+    private double limit;
+    private int inFlight;
+    private int sinceDecrease = WINDOW;
+
+    public AdaptiveConcurrencyLimit(int maxLimit, long latencyThresholdMillis) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.latencyThresholdMillis = latencyThresholdMillis;
+        this.limit = this.maxLimit;
+    }
+
+    /**
+     * Waits until fewer requests than the current limit are in flight.
+     */
+    public synchronized void acquire() {
+        while (inFlight >= (int) limit) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting to send a request", e);
+            }
+        }
+        inFlight++;
+    }
+
+    /**
+     * Records the outcome of a request that was acquired and lets the next waiting request through.
+     *
+     * @param latencyMillis how long the request took
+     * @param failed true if the server failed the request or could not be reached
+     */
+    public synchronized void release(long latencyMillis, boolean failed) {
+        inFlight--;
+        latencies.record(latencyMillis);
+        sinceDecrease++;
+        boolean slow = latencyMillis > latencyThresholdMillis;
+        if (failed || (slow && isServerSlow())) {
+            limit = Math.max(1, limit / 2);
+            sinceDecrease = 0;
+        } else if (!slow) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        notifyAll();
+    }
+
+    private boolean isServerSlow() {
+        return sinceDecrease >= WINDOW && latencies.percentile(95) > latencyThresholdMillis;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+}
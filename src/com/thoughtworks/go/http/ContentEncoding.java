@@ -0,0 +1,50 @@
+package com.thoughtworks.go.http;
+
+import org.apache.commons.httpclient.Header;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * @understands the compressed encodings a response body can be transferred in
+ */
+public class ContentEncoding {
+    /**
+     * The value of the Accept-Encoding header for the encodings that can be decoded.
+     */
+    public static final String ACCEPTED = "gzip, deflate";
+
+    /**
+     * Returns a stream that decodes the given body according to the Content-Encoding of the response.
+     *
+     * @param body the body as transferred
+     * @param contentEncoding the Content-Encoding header of the response or null
+     * @return the decoded body
+     * @throws IOException if the body cannot be decoded
+     */
+    public static InputStream decode(InputStream body, Header contentEncoding) throws IOException {
+        String encoding = contentEncoding == null ? "identity" : contentEncoding.getValue().trim().toLowerCase();
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(body);
+        }
+        if (encoding.equals("deflate")) {
+            return new InflaterInputStream(body);
+        }
+        if (encoding.equals("identity") || encoding.length() == 0) {
+            return body;
+        }
+        throw new IOException("Unsupported content encoding: " + encoding);
+    }
+
+    /**
+     * Returns true if the body was transferred gzipped.
+     *
+     * @param contentEncoding the Content-Encoding header of the response or null
+     * @return true if the body is gzipped
+     */
+    public static boolean isGzip(Header contentEncoding) {
+        return contentEncoding != null && contentEncoding.getValue().trim().toLowerCase().matches("(x-)?gzip");
+    }
+}
@@ -0,0 +1,64 @@
+package com.thoughtworks.go.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @understands telling whether a resource is finished from its body as the body is read
+ *
+ * Looks for the same states as {@link ResourceType#isFinished(CharSequence)}, over what has been read so far plus the
+ * tail of what was read before, so a state that is split across two reads is still found.
+ */
+class FinishedStateScanner extends FilterInputStream {
+    private static final int TAIL = 64;
+
+    private final ResourceType type;
+    private final StringBuilder window = new StringBuilder();
+    private boolean finished;
+
+    FinishedStateScanner(InputStream body, ResourceType type) {
+        super(body);
+        this.type = type;
+    }
+
+    /**
+     * Returns true if the body that has been read so far shows the resource to be finished.
+     *
+     * @return true if the resource is finished
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = super.read();
+        if (read >= 0) {
+            scan(new byte[]{(byte) read}, 0, 1);
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int read = super.read(bytes, offset, length);
+        if (read > 0) {
+            scan(bytes, offset, read);
+        }
+        return read;
+    }
+
+    private void scan(byte[] bytes, int offset, int length) {
+        if (finished || !type.canFinish()) {
+            return;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            window.append((char) (bytes[i] & 0xff));
+        }
+        finished = type.isFinished(window);
+        if (window.length() > TAIL) {
+            window.delete(0, window.length() - TAIL);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.thoughtworks.go.http;
+
+import com.thoughtworks.go.util.SystemEnvironment;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * @understands how long a cached response can be used without asking the Go server whether it changed
+ *
+ * Each type of resource has its own maximum age, so that, say, the first page of a feed can be reused for a few
+ * seconds while stage instances are always revalidated. Once a response is older than that it may still be served for
+ * a while longer, as long as it is revalidated in the background.
+ */
+public class FreshnessPolicy {
+    private final Map<ResourceType, Long> maxAges;
+    private final long staleWhileRevalidate;
+
+    /**
+     * @param maxAges the time in milliseconds for which responses of each type are fresh. A missing type is never fresh
+     * @param staleWhileRevalidate the time in milliseconds past its maximum age for which a response is still served
+     */
+    public FreshnessPolicy(Map<ResourceType, Long> maxAges, long staleWhileRevalidate) {
+        this.maxAges = new EnumMap<ResourceType, Long>(ResourceType.class);
+        this.maxAges.putAll(maxAges);
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    public static FreshnessPolicy fromEnvironment() {
+        Map<ResourceType, Long> maxAges = new EnumMap<ResourceType, Long>(ResourceType.class);
+        for (ResourceType type : ResourceType.values()) {
+            maxAges.put(type, SystemEnvironment.getMaxAge(type.name()));
+        }
+        return new FreshnessPolicy(maxAges, SystemEnvironment.getStaleWhileRevalidate());
+    }
+
+    /**
+     * Returns true if a cached response of the given type and age can be used as is.
+     *
+     * @param type the type of the resource
+     * @param age the time in milliseconds since the response was last known to be current
+     * @return true if the response is fresh
+     */
+    public boolean isFresh(ResourceType type, long age) {
+        return age >= 0 && age < maxAge(type);
+    }
+
+    /**
+     * Returns true if a cached response of the given type and age is no longer fresh, but can still be used while it is
+     * revalidated in the background.
+     *
+     * @param type the type of the resource
+     * @param age the time in milliseconds since the response was last known to be current
+     * @return true if the response can be served stale
+     */
+    public boolean canServeStale(ResourceType type, long age) {
+        return staleWhileRevalidate > 0 && age >= maxAge(type) && age < maxAge(type) + staleWhileRevalidate;
+    }
+
+    private long maxAge(ResourceType type) {
+        Long maxAge = maxAges.get(type);
+        return maxAge == null ? 0 : maxAge;
+    }
+}
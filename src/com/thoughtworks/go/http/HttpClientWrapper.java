@@ -2,26 +2,110 @@ package com.thoughtworks.go.http;
 
 import org.apache.commons.httpclient.*;
 import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.params.HttpMethodParams;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.thoughtworks.go.http.cache.ResponseCache;
+import com.thoughtworks.go.http.cache.ResponseMetadata;
+import com.thoughtworks.go.http.metrics.RequestListener;
+import com.thoughtworks.go.http.metrics.RequestStatistics;
+import com.thoughtworks.go.util.LruCache;
 import com.thoughtworks.go.util.SystemEnvironment;
 
 /**
  * @understands communicating with the Go server using http
+ *
+ * Connections to the server are pooled and kept alive between requests, so a single instance can be shared by any
+ * number of threads. Connections that stay idle longer than {@link SystemEnvironment#getIdleConnectionTimeout()} are closed.
+ *
+ * Requests can be throttled to {@link SystemEnvironment#getMaxRequestsPerSecond()} and, if
+ * {@link SystemEnvironment#shouldAdaptConcurrency()} is on, fewer requests are sent concurrently while the server is slow
+ * or failing.
+ *
+ * Connecting times out after {@link SystemEnvironment#getConnectTimeout()} and reading, including reading the body, after
+ * {@link SystemEnvironment#getReadTimeout()}. Temporary failures, a response whose body stops arriving part way among
+ * them, are retried with a randomised exponential backoff. If {@link SystemEnvironment#shouldHedgeRequests()} is on, a
+ * stage, job or pipeline instance that takes longer than 95% of the recent ones is requested a second time; the first
+ * answer wins and the other request is aborted.
+ *
+ * Responses are requested gzipped or deflated and decoded transparently. Once a stage or job is finished, its cached
+ * response is used without asking the server again, and so is any response that is younger than the maximum age that
+ * {@link FreshnessPolicy} allows for its type. Past that, a response can be served stale while it is revalidated in the
+ * background. A resource that the server answered with 404 or 403 is not asked for again for a while, as remembered by
+ * a {@link NegativeCache}. Objects parsed through a {@link ResponseParser} are remembered against the uri and etag of
+ * their response, so a response that has not changed is not parsed again. A {@link StreamingResponseParser} is handed
+ * the body as it arrives while it is written to the cache, so the body is never held in memory as a whole.
+ *
+ * Asynchronous requests are run on a pool of {@link SystemEnvironment#getMaxRequestsInFlight()} threads, which bounds the
+ * number of requests outstanding against the server at any time.
+ *
+ * Every request is counted, per type of resource, in {@link #getStatistics()} and reported to any
+ * {@link RequestListener} that is added. If {@link SystemEnvironment#shouldExposeStatistics()} is on, the statistics are
+ * also exposed over JMX.
  */
 public class HttpClientWrapper {
+    private static IdleConnectionTimeoutThread idleConnectionEvictor;
+    private static final AtomicInteger instances = new AtomicInteger();
+    private static final int MAX_ERROR_BODY = 1024;
+
     private final String hostname;
     private final int port;
     private HttpMethodFactory factory;
+    private final MultiThreadedHttpConnectionManager connectionManager;
     private HttpClient client;
-    private Map<URI, Header> requestToEtag = new HashMap<URI, Header>();
+    private final ExecutorService requestExecutor;
+    private final ConcurrentMap<String, FutureTask<?>> requestsInFlight = new ConcurrentHashMap<String, FutureTask<?>>();
+    private final RateLimiter rateLimiter = new RateLimiter(SystemEnvironment.getMaxRequestsPerSecond(), SystemEnvironment.getRequestBurst());
+    private final AdaptiveConcurrencyLimit concurrencyLimit = SystemEnvironment.shouldAdaptConcurrency() ? new AdaptiveConcurrencyLimit(SystemEnvironment.getMaxConnectionsPerHost(), SystemEnvironment.getSlowRequestThreshold()) : null;
+    private final RetryPolicy retryPolicy = new RetryPolicy(SystemEnvironment.getMaxRetries(), SystemEnvironment.getRetryBackoff());
+    private LatencyTracker instanceLatencies = new LatencyTracker(200, 20);
+    private ExecutorService hedgeExecutor = SystemEnvironment.shouldHedgeRequests() ? Executors.newCachedThreadPool(new RequestThreadFactory()) : null;
+    private final ResponseCache cache = new ResponseCache(new File(SystemEnvironment.getCacheFolder()), SystemEnvironment.getMemoryCacheSize());
+    private final LruCache<String, ParsedResponse> parsedResponses = new LruCache<String, ParsedResponse>(SystemEnvironment.getParsedCacheSize()) {
+        @Override
+        protected long weigh(ParsedResponse response) {
+            return response.weight;
+        }
+    };
+    private final Set<String> revalidating = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private FreshnessPolicy freshness = FreshnessPolicy.fromEnvironment();
+    private NegativeCache negativeCache = NegativeCache.fromEnvironment();
+    private final RequestStatistics statistics = new RequestStatistics();
+    private final List<RequestListener> listeners = new CopyOnWriteArrayList<RequestListener>();
+    private final String statisticsName;
 
     public HttpClientWrapper(String hostname, int port, String username, String password) {
         this(hostname, port, username, password, new HttpMethodFactory());
@@ -31,7 +115,14 @@ public class HttpClientWrapper {
         this.hostname = hostname;
         this.port = port;
         this.factory = factory;
+        this.connectionManager = connectionManager();
         this.client = client(username, password);
+        this.requestExecutor = Executors.newFixedThreadPool(SystemEnvironment.getMaxRequestsInFlight(), new RequestThreadFactory());
+        this.listeners.add(statistics);
+        this.statisticsName = String.format("%s:%d-%d", hostname, port, instances.incrementAndGet());
+        if (SystemEnvironment.shouldExposeStatistics()) {
+            statistics.registerMBeans(statisticsName);
+        }
     }
 
     public HttpClientWrapper(String hostname, int port) {
@@ -39,106 +130,659 @@ public class HttpClientWrapper {
     }
 
     public String get(String path) {
-        return get(path, null);
+        return get(path, (Map<String, String>) null);
+    }
+
+    /**
+     * Fetches the resource at the given path. If another thread is already fetching the same resource, this waits for
+     * that request to complete and returns its response instead of sending a duplicate request.
+     *
+     * @param path path of the resource relative to the Go server context
+     * @param params query parameters or null
+     * @return the response body
+     */
+    public String get(final String path, final Map<String, String> params) {
+        return coalesced(requestKey(path, params), path, new Callable<String>() {
+            public String call() throws Exception {
+                return fetch(path, params);
+            }
+        });
+    }
+
+    /**
+     * Fetches the resource at the given path and parses it. If the response has not changed since it was last parsed,
+     * the object parsed then is returned without parsing the response again. Concurrent requests for the same resource
+     * are coalesced like with {@link #get(String, Map)}.
+     *
+     * @param path path of the resource relative to the Go server context
+     * @param params query parameters or null
+     * @param parser parser that builds the object from the response
+     * @return the parsed object
+     */
+    public <T> T get(final String path, final Map<String, String> params, final ResponseParser<T> parser) {
+        return coalesced(requestKey(path, params) + " " + parser.getClass().getName(), path, new Callable<T>() {
+            public T call() throws Exception {
+                return fetch(path, params, parsing(parser), true);
+            }
+        });
+    }
+
+    public <T> T get(String path, ResponseParser<T> parser) {
+        return get(path, null, parser);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T coalesced(String key, String path, final Callable<T> fetch) {
+        final boolean hedge = hedgeExecutor != null && ResourceType.of(path).isInstance();
+        FutureTask<T> request = new FutureTask<T>(new Callable<T>() {
+            public T call() throws Exception {
+                return hedge ? hedged(fetch) : fetch.call();
+            }
+        });
+        FutureTask<T> inFlight = (FutureTask<T>) requestsInFlight.putIfAbsent(key, request);
+        if (inFlight != null) {
+            return result(inFlight);
+        }
+        try {
+            request.run();
+            return result(request);
+        } finally {
+            requestsInFlight.remove(key, request);
+        }
+    }
+
+    private String requestKey(String path, Map<String, String> params) {
+        try {
+            return url(path, params).getURI();
+        } catch (URIException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private HttpURL url(String path, Map<String, String> params) throws URIException {
+        HttpURL httpURL = new HttpURL(baseUrl() + path);
+        if (params != null && !params.isEmpty()) {
+            Map<String, String> sorted = new TreeMap<String, String>(params);
+            httpURL.setQuery(sorted.keySet().toArray(new String[sorted.size()]), sorted.values().toArray(new String[sorted.size()]));
+        }
+        return httpURL;
+    }
+
+    private String fetch(String path, Map<String, String> params) {
+        return fetch(path, params, bodies(), true);
+    }
+
+    private ResponseReader<String> bodies() {
+        return new ResponseReader<String>() {
+            public String cached(String uri) {
+                return cache.body(uri);
+            }
+
+            public String read(HttpURL httpURL, HttpMethod getMethod, InputStream transferred) throws IOException {
+                return readAndCache(httpURL, getMethod, transferred);
+            }
+        };
+    }
+
+    private <T> ResponseReader<T> parsing(final ResponseParser<T> parser) {
+        if (parser instanceof StreamingResponseParser) {
+            return streamParsing((StreamingResponseParser<T>) parser);
+        }
+        return new ResponseReader<T>() {
+            public T cached(String uri) {
+                ResponseMetadata metadata = cache.metadata(uri);
+                if (metadata == null) {
+                    return null;
+                }
+                T parsed = parsed(uri, metadata.getEtag(), parser);
+                if (parsed != null) {
+                    return parsed;
+                }
+                String response = cache.body(uri);
+                return response == null ? null : parse(uri, metadata.getEtag(), response, parser);
+            }
+
+            public T read(HttpURL httpURL, HttpMethod getMethod, InputStream transferred) throws IOException {
+                String response = readAndCache(httpURL, getMethod, transferred);
+                Header etag = getMethod.getResponseHeader("Etag");
+                return parse(httpURL.getURI(), etag == null ? null : etag.getValue(), response, parser);
+            }
+        };
+    }
+
+    private <T> ResponseReader<T> streamParsing(final StreamingResponseParser<T> parser) {
+        return new ResponseReader<T>() {
+            public T cached(String uri) throws IOException {
+                ResponseMetadata metadata = cache.metadata(uri);
+                if (metadata == null) {
+                    return null;
+                }
+                T parsed = parsed(uri, metadata.getEtag(), parser);
+                if (parsed != null) {
+                    return parsed;
+                }
+                InputStream response = cache.stream(uri);
+                if (response == null) {
+                    return null;
+                }
+                CountingInputStream counted = new CountingInputStream(response);
+                parsed = handleAndClose(parser, counted);
+                remember(uri, metadata.getEtag(), parser, parsed, counted.getByteCount());
+                return parsed;
+            }
+
+            public T read(HttpURL httpURL, HttpMethod getMethod, InputStream transferred) throws IOException {
+                final long[] length = new long[1];
+                T parsed = handleAndCache(httpURL, getMethod, transferred, new ResponseHandler<T>() {
+                    public T handle(InputStream response) throws IOException {
+                        CountingInputStream counted = new CountingInputStream(response);
+                        T parsed = parser.handle(counted);
+                        length[0] = counted.getByteCount();
+                        return parsed;
+                    }
+                });
+                Header etag = getMethod.getResponseHeader("Etag");
+                remember(httpURL.getURI(), etag == null ? null : etag.getValue(), parser, parsed, length[0]);
+                return parsed;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T parsed(String uri, String etag, ResponseParser<T> parser) {
+        ParsedResponse parsed = parsedResponses.get(uri);
+        if (parsed == null || !parsed.etag.equals(etag) || parsed.parserType != parser.getClass()) {
+            return null;
+        }
+        return (T) parsed.value;
+    }
+
+    private <T> T parse(String uri, String etag, String response, ResponseParser<T> parser) {
+        T parsed = parser.parse(response);
+        remember(uri, etag, parser, parsed, response.length());
+        return parsed;
+    }
+
+    private <T> void remember(String uri, String etag, ResponseParser<T> parser, T parsed, long length) {
+        if (SystemEnvironment.shouldUseCahce() && etag != null) {
+            parsedResponses.put(uri, new ParsedResponse(etag, parser.getClass(), parsed, length));
+        } else {
+            parsedResponses.remove(uri);
+        }
+    }
+
+    /**
+     * Fetches the resource at the given path and hands the response body to the handler as it arrives, instead of
+     * holding the whole body in memory first. The body is written to the cache while the handler reads it. Unlike
+     * {@link #get(String, Map)}, concurrent requests for the same resource are not coalesced.
+     *
+     * @param path path of the resource relative to the Go server context
+     * @param params query parameters or null
+     * @param handler handler that consumes the response body
+     * @return what the handler returns
+     */
+    public <T> T handle(String path, Map<String, String> params, final ResponseHandler<T> handler) {
+        return fetch(path, params, new ResponseReader<T>() {
+            public T cached(String uri) throws IOException {
+                InputStream cachedResponse = cache.stream(uri);
+                return cachedResponse == null ? null : handleAndClose(handler, cachedResponse);
+            }
+
+            public T read(HttpURL httpURL, HttpMethod getMethod, InputStream transferred) throws IOException {
+                return handleAndCache(httpURL, getMethod, transferred, handler);
+            }
+        }, true);
+    }
+
+    private <T> T fetch(String path, Map<String, String> params, ResponseReader<T> reader, boolean allowStale) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return fetchOnce(path, params, reader, allowStale);
+            } catch (RetriableFailure failure) {
+                if (!retryPolicy.canRetry(attempt)) {
+                    throw failure.failure;
+                }
+                retryPolicy.backoff(attempt);
+            }
+        }
     }
 
-    public String get(String path, Map<String, String> params) {
+    private <T> T fetchOnce(String path, Map<String, String> params, ResponseReader<T> reader, boolean allowStale) {
+        HttpMethod getMethod = null;
+        int returnCode = 0;
+        long start = 0;
+        boolean limited = false;
+        CountingInputStream transferred = null;
+        boolean servedFromCache = false;
         try {
-            HttpURL httpURL = new HttpURL(baseUrl() + path);
-            HttpMethod getMethod = methodFor(httpURL, params);
+            HttpURL httpURL = url(path, params);
+            getMethod = methodFor(httpURL);
+            Hedge.sending(getMethod);
 
-            populateEtagIfRequired(getMethod, httpURL);
+            T cachedResponse = responseWithoutAsking(path, params, httpURL, reader, allowStale);
+            if (cachedResponse != null) {
+                return cachedResponse;
+            }
+            int rememberedFailure = negativeCache.returnCode(httpURL.getURI());
+            if (rememberedFailure != 0) {
+                requestCompleted(ResourceType.of(path), rememberedFailure, 0, 0, false);
+                throw new RuntimeException(String.format("The request to [%s] could not be completed. Code [%s] was returned a short while ago", path, rememberedFailure));
+            }
 
-            int returnCode = client.executeMethod(getMethod);
+            String etag = populateEtagIfRequired(getMethod, httpURL);
 
-            if (SystemEnvironment.shouldUseCahce() && returnCode == 304 && etagCacheFile(httpURL).exists()) {
-                return FileUtils.readFileToString(responseCacheFile(httpURL));
+            rateLimiter.acquire();
+            if (concurrencyLimit != null) {
+                concurrencyLimit.acquire();
+                limited = true;
+            }
+            start = System.currentTimeMillis();
+            returnCode = execute(getMethod);
+            if (ResourceType.of(path).isInstance()) {
+                instanceLatencies.record(System.currentTimeMillis() - start);
+            }
+
+            if (etag != null && returnCode == 304) {
+                cache.validated(httpURL.getURI());
+                cachedResponse = reader.cached(httpURL.getURI());
+                if (cachedResponse != null) {
+                    servedFromCache = true;
+                    return cachedResponse;
+                }
+                cache.remove(httpURL.getURI());
+                throw new RetriableFailure(new RuntimeException(String.format("The cached response to [%s] was removed before it could be used", path)));
             }
 
             if (isSuccessful(returnCode)) {
-                String response = getMethod.getResponseBodyAsString();
-                setupCacheIfRequired(httpURL, getMethod, response);
-                return response;
+                ResponseBody body = new ResponseBody(responseBody(getMethod));
+                transferred = new CountingInputStream(body);
+                try {
+                    return reader.read(httpURL, getMethod, transferred);
+                } catch (IOException e) {
+                    if (body.failed) {
+                        throw new RetriableFailure(new RuntimeException("Connection pooped", e));
+                    }
+                    throw e;
+                } catch (RetriableFailure e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    throw body.failed ? new RetriableFailure(e) : e;
+                }
             }
-            throw new RuntimeException(String.format("The request to [%s] could not be completed. Response [%s] was returned with code [%s]", path, getMethod.getResponseBodyAsString(), returnCode));
+            negativeCache.failed(httpURL.getURI(), returnCode);
+            RuntimeException failure = new RuntimeException(String.format("The request to [%s] could not be completed. Response [%s] was returned with code [%s]", path, errorBody(getMethod), returnCode));
+            throw retryPolicy.isRetriable(returnCode) ? new RetriableFailure(failure) : failure;
         } catch (IOException e) {
             throw new RuntimeException("Connection pooped", e);
+        } finally {
+            long latency = System.currentTimeMillis() - start;
+            if (limited) {
+                concurrencyLimit.release(latency, returnCode == 0 || returnCode >= 500);
+            }
+            if (start != 0) {
+                requestCompleted(ResourceType.of(path), returnCode, latency, transferred == null ? 0 : transferred.getByteCount(), servedFromCache);
+            }
+            if (getMethod != null) {
+                getMethod.releaseConnection();
+            }
         }
     }
 
-    private void setupCacheIfRequired(HttpURL httpURL, HttpMethod getMethod, String response) {
-        if (SystemEnvironment.shouldUseCahce()) {
-            saveEtag(getMethod, httpURL);
-            cacheResponse(response, httpURL);
+    /**
+     * Returns the cached response if it can be used without asking the server, i.e. if it is finished or still fresh.
+     * A response that is past its freshness but within the stale-while-revalidate window is returned as well, and
+     * revalidated in the background.
+     */
+    private <T> T responseWithoutAsking(String path, Map<String, String> params, HttpURL httpURL, ResponseReader<T> reader, boolean allowStale) throws IOException {
+        String uri = httpURL.getURI();
+        if (!SystemEnvironment.shouldUseCahce()) {
+            return null;
+        }
+        boolean stale = false;
+        if (!cache.isImmutable(uri)) {
+            ResourceType type = ResourceType.of(uri);
+            long age = cache.age(uri);
+            stale = allowStale && freshness.canServeStale(type, age);
+            if (!stale && !freshness.isFresh(type, age)) {
+                return null;
+            }
         }
+        T cachedResponse = reader.cached(uri);
+        if (cachedResponse != null) {
+            requestCompleted(ResourceType.of(uri), 200, 0, 0, true);
+            if (stale) {
+                revalidateInBackground(uri, path, params);
+            }
+        }
+        return cachedResponse;
     }
 
-    private void cacheResponse(String response, HttpURL httpURL) {
+    private void revalidateInBackground(final String uri, final String path, final Map<String, String> params) {
+        if (!revalidating.add(uri)) {
+            return;
+        }
         try {
-            FileUtils.writeStringToFile(responseCacheFile(httpURL), response);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            requestExecutor.submit(new Runnable() {
+                public void run() {
+                    try {
+                        fetch(path, params, bodies(), false);
+                    } catch (RuntimeException e) {
+                        // the stale response is revalidated again the next time it is served
+                    } finally {
+                        revalidating.remove(uri);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            revalidating.remove(uri);
         }
     }
 
-    private HttpMethod methodFor(HttpURL httpURL, Map<String, String> params) throws URIException {
-        HttpMethod getMethod = factory.create(HttpMethodFactory.GET);
-        getMethod.setURI(httpURL);
-        if (params != null) {
-            getMethod.setParams(httpParams(params));
+    private void requestCompleted(ResourceType type, int returnCode, long latency, long bytes, boolean servedFromCache) {
+        for (RequestListener listener : listeners) {
+            listener.requestCompleted(type, returnCode, latency, bytes, servedFromCache);
         }
-        return getMethod;
     }
 
-    private void populateEtagIfRequired(HttpMethod method, URI httpURL) {
-        if (SystemEnvironment.shouldUseCahce() && etagCacheFile(httpURL).exists()) {
+    private InputStream responseBody(HttpMethod getMethod) throws IOException {
+        InputStream body = getMethod.getResponseBodyAsStream();
+        return body == null ? new ByteArrayInputStream(new byte[0]) : body;
+    }
+
+    private int execute(HttpMethod getMethod) {
+        try {
+            return client.executeMethod(getMethod);
+        } catch (IOException e) {
+            throw new RetriableFailure(new RuntimeException("Connection pooped", e));
+        }
+    }
+
+    private <T> T hedged(Callable<T> request) throws Exception {
+        long delay = instanceLatencies.percentile(95);
+        if (delay < 0) {
+            return request.call();
+        }
+        CompletionService<T> race = new ExecutorCompletionService<T>(hedgeExecutor);
+        List<Hedge<T>> requests = new ArrayList<Hedge<T>>();
+        try {
+            requests.add(new Hedge<T>(race, request));
+            Future<T> first = race.poll(delay, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                requests.add(new Hedge<T>(race, request));
+                first = race.take();
+            }
             try {
-                method.addRequestHeader("If-None-Match", FileUtils.readFileToString(etagCacheFile(httpURL)));
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+                return result(first);
+            } catch (RuntimeException e) {
+                if (requests.size() == 1) {
+                    throw e;
+                }
+                return result(race.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            for (Hedge<T> hedge : requests) {
+                hedge.cancel();
             }
         }
     }
 
-    private void saveEtag(HttpMethod getMethod, URI httpURL) {
-        Header header = getMethod.getResponseHeader("Etag");
-        if (header != null) {
-            try {
-                FileUtils.writeStringToFile(etagCacheFile(httpURL), header.getValue());
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+    private String readAndCache(HttpURL httpURL, HttpMethod getMethod, InputStream transferred) throws IOException {
+        Header contentEncoding = getMethod.getResponseHeader("Content-Encoding");
+        byte[] body = IOUtils.toByteArray(transferred);
+        String response = IOUtils.toString(ContentEncoding.decode(new ByteArrayInputStream(body), contentEncoding), charset(getMethod));
+        boolean keepCompressed = SystemEnvironment.shouldCacheCompressedResponses() && ContentEncoding.isGzip(contentEncoding);
+        setupCacheIfRequired(httpURL, getMethod, response, keepCompressed ? body : null);
+        return response;
+    }
+
+    /**
+     * Returns the start of the body the server failed with, decoded like a successful response, to tell what went wrong.
+     */
+    private String errorBody(HttpMethod getMethod) {
+        InputStream body = null;
+        try {
+            body = ContentEncoding.decode(responseBody(getMethod), getMethod.getResponseHeader("Content-Encoding"));
+            byte[] start = new byte[MAX_ERROR_BODY + 1];
+            int length = 0;
+            int read;
+            while (length < start.length && (read = body.read(start, length, start.length - length)) != -1) {
+                length += read;
             }
+            String error = new String(start, 0, Math.min(length, MAX_ERROR_BODY), charset(getMethod));
+            return length > MAX_ERROR_BODY ? error + "..." : error;
+        } catch (IOException e) {
+            return "that could not be read: " + e.getMessage();
+        } finally {
+            IOUtils.closeQuietly(body);
         }
     }
 
-    private File etagCacheFile(URI httpURL) {
+    private String charset(HttpMethod getMethod) {
+        return getMethod instanceof HttpMethodBase ? ((HttpMethodBase) getMethod).getResponseCharSet() : "ISO-8859-1";
+    }
+
+    /**
+     * Hands the body to the handler as it arrives and writes it to the cache on the way. Whether the response can ever
+     * change is told from the body as it goes by, like {@link #setupCacheIfRequired} does with a whole body.
+     */
+    private <T> T handleAndCache(HttpURL httpURL, HttpMethod getMethod, InputStream transferred, ResponseHandler<T> handler) throws IOException {
+        Header contentEncoding = getMethod.getResponseHeader("Content-Encoding");
+        Header etag = getMethod.getResponseHeader("Etag");
+        if (!SystemEnvironment.shouldUseCahce() || etag == null) {
+            return handleAndClose(handler, ContentEncoding.decode(transferred, contentEncoding));
+        }
+        String uri = httpURL.getURI();
+        ResponseMetadata metadata = new ResponseMetadata(etag.getValue(), false);
+        boolean keepCompressed = SystemEnvironment.shouldCacheCompressedResponses() && ContentEncoding.isGzip(contentEncoding);
+        ResponseCache.PendingResponse cachedResponse = keepCompressed ? cache.storingGzipped(uri, metadata) : cache.storing(uri, metadata);
         try {
-            String fileName = DigestUtils.md5Hex(httpURL.getURI()) + "_etag";
-            return new File(SystemEnvironment.getCacheFolder(), fileName);
-        } catch (URIException e) {
-            throw new RuntimeException(e);
+            InputStream teed;
+            FinishedStateScanner response;
+            if (keepCompressed) {
+                teed = new TeeInputStream(transferred, cachedResponse);
+                response = new FinishedStateScanner(ContentEncoding.decode(teed, contentEncoding), ResourceType.of(uri));
+            } else {
+                teed = new TeeInputStream(ContentEncoding.decode(transferred, contentEncoding), cachedResponse);
+                response = new FinishedStateScanner(teed, ResourceType.of(uri));
+            }
+            T result = handler.handle(new CloseShieldInputStream(response));
+            IOUtils.copy(response, new NullOutputStream());
+            IOUtils.copy(teed, new NullOutputStream());
+            cachedResponse.publish(new ResponseMetadata(etag.getValue(), response.isFinished()));
+            return result;
+        } catch (IOException e) {
+            cachedResponse.discard();
+            throw e;
+        } catch (RuntimeException e) {
+            cachedResponse.discard();
+            throw e;
+        } finally {
+            IOUtils.closeQuietly(transferred);
+        }
+    }
+
+    private <T> T handleAndClose(ResponseHandler<T> handler, InputStream response) throws IOException {
+        try {
+            return handler.handle(response);
+        } finally {
+            IOUtils.closeQuietly(response);
+        }
+    }
+
+    /**
+     * Same as {@link #get(String, Map)}, but returns immediately. The request is sent once fewer than
+     * {@link SystemEnvironment#getMaxRequestsInFlight()} requests are outstanding.
+     *
+     * @param path path of the resource relative to the Go server context
+     * @param params query parameters or null
+     * @return the response which will be available once the request completes
+     */
+    public Future<String> getAsync(final String path, final Map<String, String> params) {
+        return requestExecutor.submit(new Callable<String>() {
+            public String call() throws Exception {
+                return get(path, params);
+            }
+        });
+    }
+
+    public Future<String> getAsync(String path) {
+        return getAsync(path, (Map<String, String>) null);
+    }
+
+    /**
+     * Same as {@link #get(String, Map, ResponseParser)}, but returns immediately like {@link #getAsync(String, Map)}.
+     *
+     * @param path path of the resource relative to the Go server context
+     * @param params query parameters or null
+     * @param parser parser that builds the object from the response
+     * @return the parsed object which will be available once the request completes
+     */
+    public <T> Future<T> getAsync(final String path, final Map<String, String> params, final ResponseParser<T> parser) {
+        return requestExecutor.submit(new Callable<T>() {
+            public T call() throws Exception {
+                return get(path, params, parser);
+            }
+        });
+    }
+
+    /**
+     * Fetches all the given resources concurrently and waits for all of them to complete. The responses are returned in
+     * the same order as the paths. Use this instead of calling {@link #get(String)} in a loop.
+     *
+     * @param paths paths of the resources relative to the Go server context
+     * @return the responses in the order of the paths
+     */
+    public List<String> getAll(List<String> paths) {
+        List<String> responses = new ArrayList<String>();
+        if (Thread.currentThread() instanceof RequestThread) {
+            for (String path : paths) {
+                responses.add(get(path));
+            }
+            return responses;
+        }
+        List<Future<String>> pending = new ArrayList<Future<String>>();
+        for (String path : paths) {
+            pending.add(getAsync(path));
+        }
+        for (Future<String> response : pending) {
+            responses.add(result(response));
+        }
+        return responses;
+    }
+
+    /**
+     * Same as {@link #getAll(List)}, but parses every response like {@link #get(String, Map, ResponseParser)}.
+     *
+     * @param paths paths of the resources relative to the Go server context
+     * @param parser parser that builds the objects from the responses
+     * @return the parsed objects in the order of the paths
+     */
+    public <T> List<T> getAll(List<String> paths, ResponseParser<T> parser) {
+        List<T> parsed = new ArrayList<T>();
+        if (Thread.currentThread() instanceof RequestThread) {
+            for (String path : paths) {
+                parsed.add(get(path, parser));
+            }
+            return parsed;
+        }
+        List<Future<T>> pending = new ArrayList<Future<T>>();
+        for (String path : paths) {
+            pending.add(getAsync(path, null, parser));
         }
+        for (Future<T> response : pending) {
+            parsed.add(result(response));
+        }
+        return parsed;
     }
 
-    private File responseCacheFile(HttpURL httpURL) {
+    private <T> T result(Future<T> response) {
         try {
-            String fileName = DigestUtils.md5Hex(httpURL.getURI());
-            return new File(SystemEnvironment.getCacheFolder(), fileName);
-        } catch (Exception e) {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
         }
     }
 
-    private boolean isSuccessful(int returnCode) {
-        return returnCode >= 200 && returnCode < 300;
+    /**
+     * Reports every request sent by this client, including each retry, to the given listener as well.
+     *
+     * @param listener the listener to report to
+     */
+    public void addListener(RequestListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns the statistics of the requests sent by this client, per type of resource.
+     *
+     * @return the statistics
+     */
+    public RequestStatistics getStatistics() {
+        return statistics;
     }
 
-    private HttpMethodParams httpParams(Map<String, String> params) {
-        HttpMethodParams methodParams = new HttpMethodParams();
-        for (String param : params.keySet()) {
-            methodParams.setParameter(param,  params.get(param));
+    /**
+     * Closes all the pooled connections and stops evicting from the cache folder. This instance should not be used after
+     * it is shutdown.
+     */
+    public void shutdown() {
+        requestExecutor.shutdown();
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdown();
+        }
+        synchronized (HttpClientWrapper.class) {
+            idleConnectionEvictor.removeConnectionManager(connectionManager);
+        }
+        connectionManager.shutdown();
+        cache.close();
+        if (SystemEnvironment.shouldExposeStatistics()) {
+            statistics.unregisterMBeans(statisticsName);
         }
-        return methodParams;
+    }
+
+    private void setupCacheIfRequired(HttpURL httpURL, HttpMethod getMethod, String response, byte[] gzippedResponse) throws URIException {
+        Header etag = getMethod.getResponseHeader("Etag");
+        if (!SystemEnvironment.shouldUseCahce() || etag == null) {
+            return;
+        }
+        String uri = httpURL.getURI();
+        ResponseMetadata metadata = new ResponseMetadata(etag.getValue(), ResourceType.of(uri).isFinished(response));
+        if (gzippedResponse == null) {
+            cache.put(uri, metadata, response);
+        } else {
+            cache.put(uri, metadata, response, gzippedResponse);
+        }
+    }
+
+    private HttpMethod methodFor(HttpURL httpURL) throws URIException {
+        HttpMethod getMethod = factory.create(HttpMethodFactory.GET);
+        getMethod.setURI(httpURL);
+        getMethod.setRequestHeader("Accept-Encoding", ContentEncoding.ACCEPTED);
+        return getMethod;
+    }
+
+    private String populateEtagIfRequired(HttpMethod method, URI httpURL) throws URIException {
+        if (!SystemEnvironment.shouldUseCahce()) {
+            return null;
+        }
+        String etag = cache.etag(httpURL.getURI());
+        if (etag != null) {
+            method.addRequestHeader("If-None-Match", etag);
+        }
+        return etag;
+    }
+
+    private boolean isSuccessful(int returnCode) {
+        return returnCode >= 200 && returnCode < 300;
     }
 
     private String baseUrl() {
@@ -149,8 +793,31 @@ public class HttpClientWrapper {
         return fullLink.substring(fullLink.indexOf(actualBegining));
     }
 
+    private MultiThreadedHttpConnectionManager connectionManager() {
+        MultiThreadedHttpConnectionManager manager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = manager.getParams();
+        params.setDefaultMaxConnectionsPerHost(SystemEnvironment.getMaxConnectionsPerHost());
+        params.setMaxTotalConnections(SystemEnvironment.getMaxTotalConnections());
+        params.setStaleCheckingEnabled(true);
+        params.setConnectionTimeout(SystemEnvironment.getConnectTimeout());
+        params.setSoTimeout(SystemEnvironment.getReadTimeout());
+        evictIdleConnections(manager);
+        return manager;
+    }
+
+    private static synchronized void evictIdleConnections(MultiThreadedHttpConnectionManager manager) {
+        if (idleConnectionEvictor == null) {
+            idleConnectionEvictor = new IdleConnectionTimeoutThread();
+            idleConnectionEvictor.setName("go-api-client-idle-connection-evictor");
+            idleConnectionEvictor.setConnectionTimeout(SystemEnvironment.getIdleConnectionTimeout());
+            idleConnectionEvictor.start();
+        }
+        idleConnectionEvictor.addConnectionManager(manager);
+    }
+
     private HttpClient client(String username, String password) {
-        HttpClient httpClient = new HttpClient();
+        HttpClient httpClient = new HttpClient(connectionManager);
+        httpClient.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, new DefaultHttpMethodRetryHandler(0, false));
         if (username != null) {
             httpClient.getParams().setAuthenticationPreemptive(true);
             httpClient.getState().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
@@ -161,4 +828,170 @@ public class HttpClientWrapper {
     void setClient(HttpClient httpClient) {
         this.client = httpClient;
     }
+
+    void setFreshness(FreshnessPolicy freshness) {
+        this.freshness = freshness;
+    }
+
+    void setNegativeCache(NegativeCache negativeCache) {
+        this.negativeCache = negativeCache;
+    }
+
+    void setHedging(ExecutorService hedgeExecutor, LatencyTracker instanceLatencies) {
+        this.hedgeExecutor = hedgeExecutor;
+        this.instanceLatencies = instanceLatencies;
+    }
+
+    HttpClient httpClient() {
+        return client;
+    }
+
+    /**
+     * A failure that is worth trying the request again for.
+     */
+    private static class RetriableFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final RuntimeException failure;
+
+        private RetriableFailure(RuntimeException failure) {
+            super(failure);
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * The body of a response as it arrives from the server, which remembers whether reading it failed, so that a body that
+     * stops arriving part way can be told apart from one that could not be parsed.
+     */
+    private static class ResponseBody extends FilterInputStream {
+        private volatile boolean failed;
+
+        private ResponseBody(InputStream body) {
+            super(body);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            try {
+                return super.read(bytes, offset, length);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            try {
+                return super.skip(count);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * One of the requests racing in {@link #hedged(Callable)}. Cancelling it interrupts the thread sending it and aborts
+     * the method it is waiting on, so that a request that lost the race does not hold on to a connection.
+     */
+    private static class Hedge<T> implements Callable<T> {
+        private static final ThreadLocal<Hedge<?>> current = new ThreadLocal<Hedge<?>>();
+
+        private final Callable<T> request;
+        private final Future<T> future;
+        private volatile HttpMethod method;
+        private volatile boolean cancelled;
+
+        private Hedge(CompletionService<T> race, Callable<T> request) {
+            this.request = request;
+            this.future = race.submit(this);
+        }
+
+        static void sending(HttpMethod method) {
+            Hedge<?> hedge = current.get();
+            if (hedge != null) {
+                hedge.method = method;
+                if (hedge.cancelled) {
+                    method.abort();
+                }
+            }
+        }
+
+        public T call() throws Exception {
+            current.set(this);
+            try {
+                return request.call();
+            } finally {
+                current.remove();
+            }
+        }
+
+        void cancel() {
+            if (!future.cancel(true)) {
+                return;
+            }
+            cancelled = true;
+            HttpMethod sending = method;
+            if (sending != null) {
+                sending.abort();
+            }
+        }
+    }
+
+    /**
+     * Reads a response either from the cache or from the server.
+     */
+    private interface ResponseReader<T> {
+        T cached(String uri) throws IOException;
+
+        T read(HttpURL httpURL, HttpMethod getMethod, InputStream transferred) throws IOException;
+    }
+
+    /**
+     * An object parsed from a response, along with what it takes to know whether it can be used for another response.
+     */
+    private static class ParsedResponse {
+        private final String etag;
+        private final Class<?> parserType;
+        private final Object value;
+        private final long weight;
+
+        private ParsedResponse(String etag, Class<?> parserType, Object value, long weight) {
+            this.etag = etag;
+            this.parserType = parserType;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A thread that sends asynchronous requests. Requests issued in bulk from such a thread are sent in the same thread
+     * so that a full pool cannot wait on itself.
+     */
+    private static class RequestThread extends Thread {
+        private RequestThread(Runnable runnable, String name) {
+            super(runnable, name);
+            setDaemon(true);
+        }
+    }
+
+    private static class RequestThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            return new RequestThread(runnable, "go-api-client-request-" + count.incrementAndGet());
+        }
+    }
 }
@@ -0,0 +1,40 @@
+package com.thoughtworks.go.http;
+
+import java.util.Arrays;
+
+/**
+ * @understands how long the most recent requests took
+ */
+public class LatencyTracker {
+    private final long[] samples;
+    private final int minSamples;
+    private int count;
+    private int next;
+
+    public LatencyTracker(int window, int minSamples) {
+        this.samples = new long[window];
+        this.minSamples = minSamples;
+    }
+
+    public synchronized void record(long latencyMillis) {
+        samples[next] = latencyMillis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Returns the latency under which the given percentage of the recent requests completed.
+     *
+     * @param percent percentage between 0 and 100
+     * @return the latency in milliseconds or -1 if not enough requests have been recorded yet
+     */
+    public synchronized long percentile(double percent) {
+        if (count < minSamples) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+}
@@ -0,0 +1,80 @@
+package com.thoughtworks.go.http;
+
+import com.thoughtworks.go.util.LruCache;
+import com.thoughtworks.go.util.SystemEnvironment;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @understands remembering for a while that a resource is missing or forbidden
+ *
+ * Stage and job links in old feed pages often point at resources that have since been deleted or hidden, and a crawl
+ * through old history would otherwise ask for them again on every pass. A failure is remembered for the time configured
+ * for its status code and then forgotten, so a resource that comes back is picked up again. Status codes without a time
+ * are never remembered.
+ */
+public class NegativeCache {
+    private static final int[] REMEMBERED_CODES = {403, 404, 410};
+    private static final int MAX_ENTRIES = 10000;
+
+    private final Map<Integer, Long> timesToLive;
+    private final LruCache<String, Failure> failures = new LruCache<String, Failure>(MAX_ENTRIES);
+
+    /**
+     * @param timesToLive the time in milliseconds for which a failure with each status code is remembered
+     */
+    public NegativeCache(Map<Integer, Long> timesToLive) {
+        this.timesToLive = new HashMap<Integer, Long>(timesToLive);
+    }
+
+    public static NegativeCache fromEnvironment() {
+        Map<Integer, Long> timesToLive = new HashMap<Integer, Long>();
+        for (int code : REMEMBERED_CODES) {
+            timesToLive.put(code, SystemEnvironment.getNegativeCacheTimeToLive(code));
+        }
+        return new NegativeCache(timesToLive);
+    }
+
+    /**
+     * Remembers that the server answered a request for the given uri with the given status code, if failures with that
+     * code are remembered at all.
+     *
+     * @param uri the uri of the resource
+     * @param returnCode the status code the server answered with
+     */
+    public void failed(String uri, int returnCode) {
+        Long timeToLive = timesToLive.get(returnCode);
+        if (timeToLive != null && timeToLive > 0) {
+            failures.put(uri, new Failure(returnCode, System.currentTimeMillis() + timeToLive));
+        }
+    }
+
+    /**
+     * Returns the status code of the remembered failure for the given uri.
+     *
+     * @param uri the uri of the resource
+     * @return the status code or 0 if no failure is remembered
+     */
+    public int returnCode(String uri) {
+        Failure failure = failures.get(uri);
+        if (failure == null) {
+            return 0;
+        }
+        if (failure.expiresAt <= System.currentTimeMillis()) {
+            failures.remove(uri);
+            return 0;
+        }
+        return failure.returnCode;
+    }
+
+    private static class Failure {
+        private final int returnCode;
+        private final long expiresAt;
+
+        private Failure(int returnCode, long expiresAt) {
+            this.returnCode = returnCode;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
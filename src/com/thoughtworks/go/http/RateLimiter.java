@@ -0,0 +1,65 @@
+package com.thoughtworks.go.http;
+
+/**
+ * @understands spacing out requests so that the Go server is not sent more than a given number of requests per second
+ *
+ * This is a token bucket. Tokens are added at the given rate up to the size of the bucket, and every request takes a
+ * token. A full bucket lets a short burst of requests through at once. A rate of zero or less means no limit.
+ */
+public class RateLimiter {
+    private static final long NANOS_PER_SECOND = 1000L * 1000 * 1000;
+
+    private final double permitsPerSecond;
+    private final double maxPermits;
+    private double permits;
+    private long lastRefill;
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.maxPermits = Math.max(1, burst);
+        this.permits = maxPermits;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Waits until a request can be sent.
+     */
+    public void acquire() {
+        if (permitsPerSecond <= 0) {
+            return;
+        }
+        long waitNanos;
+        while ((waitNanos = takePermit()) > 0) {
+            try {
+                Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting to send a request", e);
+            }
+        }
+    }
+
+    /**
+     * Takes a token if one is available right now.
+     *
+     * @return true if a request can be sent right now
+     */
+    public boolean tryAcquire() {
+        return permitsPerSecond <= 0 || takePermit() == 0;
+    }
+
+    private synchronized long takePermit() {
+        refill();
+        if (permits >= 1) {
+            permits -= 1;
+            return 0;
+        }
+        return (long) ((1 - permits) * NANOS_PER_SECOND / permitsPerSecond) + 1;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        permits = Math.min(maxPermits, permits + (now - lastRefill) * permitsPerSecond / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,71 @@
+package com.thoughtworks.go.http;
+
+import java.util.regex.Pattern;
+
+/**
+ * @understands the kinds of resources that the Go server exposes, told apart by their path
+ */
+public enum ResourceType {
+    FEED("/api/pipelines/[^/]+/stages\\.xml$", null),
+    STAGE("/api/stages/\\d+\\.xml$", "Passed|Failed|Cancelled"),
+    JOB("/api/jobs/\\d+\\.xml$", "Completed"),
+    PIPELINE("/api/pipelines/[^/]+/\\d+\\.xml$", null),
+    ARTIFACT("/files/", null),
+    OTHER("", null);
+
+    private final Pattern pattern;
+    private final Pattern finishedState;
+
+    ResourceType(String pattern, String finishedStates) {
+        this.pattern = Pattern.compile(pattern);
+        this.finishedState = finishedStates == null ? null : Pattern.compile("<state>(" + finishedStates + ")</state>");
+    }
+
+    /**
+     * Returns true if the given resource can never change again. A stage that has passed, failed or been cancelled and a
+     * job that has completed are finished. Nothing else is considered finished, not even a pipeline, since stages can be
+     * added to it later.
+     *
+     * @param resource the body of a resource of this type
+     * @return true if the resource is finished
+     */
+    public boolean isFinished(CharSequence resource) {
+        return finishedState != null && finishedState.matcher(resource).find();
+    }
+
+    /**
+     * Returns true if resources of this type can ever be finished.
+     *
+     * @return true for stages and jobs
+     */
+    public boolean canFinish() {
+        return finishedState != null;
+    }
+
+    /**
+     * Returns true for resources that describe a single stage, job or pipeline instance. These are what a crawler
+     * fetches the most of and their content settles once the instance completes.
+     *
+     * @return true if this is a stage, job or pipeline instance
+     */
+    public boolean isInstance() {
+        return this == STAGE || this == JOB || this == PIPELINE;
+    }
+
+    /**
+     * Returns the type of the resource at the given path or url.
+     *
+     * @param path the path or the url of the resource
+     * @return the type of the resource
+     */
+    public static ResourceType of(String path) {
+        int query = path.indexOf('?');
+        String withoutQuery = query < 0 ? path : path.substring(0, query);
+        for (ResourceType type : values()) {
+            if (type.pattern.matcher(withoutQuery).find()) {
+                return type;
+            }
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,18 @@
+package com.thoughtworks.go.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @understands consuming the body of a response as it arrives from the Go server
+ */
+public interface ResponseHandler<T> {
+    /**
+     * Called with the response body. The stream is closed once this returns, so the handler must not hold on to it.
+     *
+     * @param response the response body
+     * @return whatever the handler makes of the response
+     * @throws IOException if the response cannot be read
+     */
+    T handle(InputStream response) throws IOException;
+}
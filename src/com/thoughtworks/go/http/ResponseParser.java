@@ -0,0 +1,17 @@
+package com.thoughtworks.go.http;
+
+/**
+ * @understands turning the body of a response from the Go server into an object
+ *
+ * What a parser returns may be handed out again for as long as the response does not change, so it should not be
+ * modified by whoever gets it.
+ */
+public interface ResponseParser<T> {
+    /**
+     * Called with the response body.
+     *
+     * @param response the response body
+     * @return the object built from the response
+     */
+    T parse(String response);
+}
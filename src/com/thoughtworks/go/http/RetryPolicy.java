@@ -0,0 +1,48 @@
+package com.thoughtworks.go.http;
+
+import java.util.Random;
+
+/**
+ * @understands when and after how long a failed request to the Go server is tried again
+ *
+ * Only failures that are likely to be temporary are retried: the server could not be reached, did not answer in time,
+ * stopped sending the body of its response part way, or answered 502, 503 or 504. The wait doubles with every attempt and is randomised so that many clients that failed
+ * together do not retry together.
+ */
+public class RetryPolicy {
+    private final int maxRetries;
+    private final long baseBackoffMillis;
+    private final Random random = new Random();
+
+    public RetryPolicy(int maxRetries, long baseBackoffMillis) {
+        this.maxRetries = maxRetries;
+        this.baseBackoffMillis = baseBackoffMillis;
+    }
+
+    public boolean isRetriable(int returnCode) {
+        return returnCode == 502 || returnCode == 503 || returnCode == 504;
+    }
+
+    public boolean canRetry(int attempt) {
+        return attempt < maxRetries;
+    }
+
+    /**
+     * Waits before the next attempt.
+     *
+     * @param attempt the number of the attempt that failed, starting from 0
+     */
+    public void backoff(int attempt) {
+        long ceiling = baseBackoffMillis << Math.min(attempt, 16);
+        try {
+            Thread.sleep(nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to retry a request", e);
+        }
+    }
+
+    private synchronized long nextLong(long bound) {
+        return (long) (random.nextDouble() * bound);
+    }
+}
@@ -0,0 +1,10 @@
+package com.thoughtworks.go.http;
+
+/**
+ * @understands a parser that can also build its object from the body of a response as it arrives
+ *
+ * {@link HttpClientWrapper#get(String, java.util.Map, ResponseParser)} hands such a parser the response body as a stream,
+ * so the body is never held in memory as a whole. The string form is still used by whoever has the body at hand.
+ */
+public interface StreamingResponseParser<T> extends ResponseParser<T>, ResponseHandler<T> {
+}
@@ -0,0 +1,137 @@
+package com.thoughtworks.go.http.cache;
+
+import com.thoughtworks.go.util.SystemEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @understands keeping cache stores within their size and age limits
+ *
+ * Eviction runs on a background thread, a batch of responses at a time, so that it never holds up a request. A store
+ * that is far over its limits is brought back within them over several runs.
+ *
+ * A store that is shared by several caches is evicted from once, until every cache that scheduled it has unscheduled it
+ * again. The background thread goes away once no store is scheduled.
+ */
+public class CacheEvictor {
+    private static final Map<CacheStore, Scheduled> scheduledStores = new HashMap<CacheStore, Scheduled>();
+    private static ScheduledExecutorService scheduler;
+
+    private final EvictionPolicy policy;
+    private final int batchSize;
+
+    public CacheEvictor(EvictionPolicy policy, int batchSize) {
+        this.policy = policy;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Starts evicting from the given store every {@link SystemEnvironment#getCacheEvictionInterval()}, unless that is
+     * already happening.
+     *
+     * @param store the store to keep in check
+     */
+    public static synchronized void schedule(final CacheStore store) {
+        Scheduled scheduled = scheduledStores.get(store);
+        if (scheduled != null) {
+            scheduled.users++;
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "go-api-client-cache-evictor");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        final CacheEvictor evictor = new CacheEvictor(new EvictionPolicy(SystemEnvironment.getCacheMaxSize(), SystemEnvironment.getCacheTimeToLive(), SystemEnvironment.getCacheImmutableTimeToLive()), 1000);
+        long interval = SystemEnvironment.getCacheEvictionInterval();
+        scheduledStores.put(store, new Scheduled(scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    evictor.evict(store);
+                } catch (Exception e) {
+                    // try again on the next run
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS)));
+    }
+
+    /**
+     * Stops evicting from the given store once everyone who scheduled it has unscheduled it. A run that has already
+     * started is allowed to finish.
+     *
+     * @param store the store that is no longer used
+     */
+    public static synchronized void unschedule(CacheStore store) {
+        Scheduled scheduled = scheduledStores.get(store);
+        if (scheduled == null || --scheduled.users > 0) {
+            return;
+        }
+        scheduled.eviction.cancel(false);
+        scheduledStores.remove(store);
+        if (scheduledStores.isEmpty()) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    static synchronized boolean isScheduled(CacheStore store) {
+        return scheduledStores.containsKey(store);
+    }
+
+    /**
+     * Evicts at most a batch of expired responses from the store and, if it is still too big, at most a batch of the
+     * responses that the policy gives up first. Then lets the store tidy up after itself.
+     *
+     * @param store the store to evict from
+     * @return the number of responses evicted
+     * @throws Exception if the store could not be maintained
+     */
+    public int evict(CacheStore store) throws Exception {
+        long now = System.currentTimeMillis();
+        List<StoredResponse> remaining = new ArrayList<StoredResponse>();
+        long size = 0;
+        int evicted = 0;
+        for (StoredResponse response : store.list()) {
+            if (evicted < batchSize && policy.isExpired(response, now)) {
+                store.evict(response);
+                evicted++;
+            } else {
+                remaining.add(response);
+                size += response.getSize();
+            }
+        }
+        if (policy.isTooBig(size)) {
+            Collections.sort(remaining, policy);
+            for (int i = 0; i < remaining.size() && evicted < 2 * batchSize && policy.isTooBig(size); i++) {
+                store.evict(remaining.get(i));
+                size -= remaining.get(i).getSize();
+                evicted++;
+            }
+        }
+        store.maintain();
+        return evicted;
+    }
+
+    private static class Scheduled {
+        private final ScheduledFuture<?> eviction;
+        private int users = 1;
+
+        private Scheduled(ScheduledFuture<?> eviction) {
+            this.eviction = eviction;
+        }
+    }
+}
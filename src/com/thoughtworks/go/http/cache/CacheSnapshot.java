@@ -0,0 +1,170 @@
+package com.thoughtworks.go.http.cache;
+
+import com.thoughtworks.go.util.SystemEnvironment;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * @understands moving the contents of a cache folder to another machine
+ *
+ * A snapshot is a zip archive holding the metadata and the body of every response as a pair of entries. Bodies are
+ * copied exactly as they are stored, so they stay compressed. Only stores that know the uris of their responses can be
+ * exported, which rules out {@link FileCacheStore}.
+ *
+ * Restoring a snapshot does not ask the Go server about anything. A restored response that can change is revalidated
+ * with its etag the first time it is requested, like any other cached response, and a corrupt body fails the checksum of
+ * its zip entry before it is written to the store. A response that the store already holds a newer copy of is skipped.
+ *
+ * Run this class with 'export' or 'import' and the path of the archive to snapshot
+ * {@link SystemEnvironment#getCacheFolder()}.
+ */
+public class CacheSnapshot {
+    private static final String VERSION_ENTRY = "snapshot.properties";
+    private static final String VERSION = "1";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 || !args[0].matches("export|import")) {
+            System.err.println("Usage: CacheSnapshot export|import <archive>");
+            System.exit(1);
+        }
+        CacheStore store = ResponseCache.store(new File(SystemEnvironment.getCacheFolder()));
+        if (args[0].equals("export")) {
+            OutputStream archive = new FileOutputStream(args[1]);
+            try {
+                System.out.println(String.format("Exported %s responses to %s", export(store, archive), args[1]));
+            } finally {
+                IOUtils.closeQuietly(archive);
+            }
+        } else {
+            InputStream archive = new FileInputStream(args[1]);
+            try {
+                System.out.println(String.format("Imported %s responses from %s", restore(store, archive), args[1]));
+            } finally {
+                IOUtils.closeQuietly(archive);
+            }
+        }
+    }
+
+    /**
+     * Writes every response in the store whose uri is known to the given stream as a snapshot. The stream is not closed.
+     *
+     * @param store the store to export
+     * @param out the stream to write the snapshot to
+     * @return the number of responses exported
+     * @throws IOException if the snapshot could not be written
+     */
+    public static int export(CacheStore store, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out));
+        zip.setLevel(Deflater.BEST_SPEED);
+        Properties version = new Properties();
+        version.setProperty("version", VERSION);
+        writeEntry(zip, VERSION_ENTRY, version);
+        int exported = 0;
+        for (StoredResponse response : store.list()) {
+            if (response.getUri() == null) {
+                continue;
+            }
+            InputStream body = store.open(response.getUri());
+            if (body == null) {
+                continue;
+            }
+            try {
+                writeEntry(zip, exported + ".properties", properties(response));
+                zip.putNextEntry(new ZipEntry(exported + ".body"));
+                IOUtils.copy(body, zip);
+                zip.closeEntry();
+            } finally {
+                IOUtils.closeQuietly(body);
+            }
+            exported++;
+        }
+        zip.finish();
+        zip.flush();
+        return exported;
+    }
+
+    /**
+     * Writes the responses in the snapshot read from the given stream to the store. The stream is not closed.
+     *
+     * @param store the store to import into
+     * @param in the stream to read the snapshot from
+     * @return the number of responses imported
+     * @throws IOException if the snapshot is corrupt or could not be read
+     */
+    public static int restore(CacheStore store, InputStream in) throws IOException {
+        ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in));
+        ZipEntry entry = zip.getNextEntry();
+        if (entry == null || !entry.getName().equals(VERSION_ENTRY)) {
+            throw new IOException("Not a cache snapshot");
+        }
+        String version = readEntry(zip).getProperty("version");
+        if (!VERSION.equals(version)) {
+            throw new IOException(String.format("Unsupported cache snapshot version [%s]", version));
+        }
+        int restored = 0;
+        while ((entry = zip.getNextEntry()) != null) {
+            Properties properties = readEntry(zip);
+            entry = zip.getNextEntry();
+            if (entry == null || !entry.getName().endsWith(".body")) {
+                throw new IOException("The cache snapshot is truncated");
+            }
+            String uri = properties.getProperty("uri");
+            ResponseMetadata metadata = new ResponseMetadata(properties.getProperty("etag"), Long.parseLong(properties.getProperty("storedAt")), Boolean.parseBoolean(properties.getProperty("immutable")));
+            ResponseMetadata existing = store.metadata(uri);
+            if (existing != null && existing.getStoredAt() >= metadata.getStoredAt()) {
+                continue;
+            }
+            store.write(uri, metadata, copy(zip, store.newPendingFile()));
+            restored++;
+        }
+        return restored;
+    }
+
+    private static Properties properties(StoredResponse response) {
+        Properties properties = new Properties();
+        properties.setProperty("uri", response.getUri());
+        properties.setProperty("etag", response.getMetadata().getEtag());
+        properties.setProperty("storedAt", String.valueOf(response.getMetadata().getStoredAt()));
+        properties.setProperty("immutable", String.valueOf(response.getMetadata().isImmutable()));
+        return properties;
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, Properties properties) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        properties.store(zip, null);
+        zip.closeEntry();
+    }
+
+    private static Properties readEntry(ZipInputStream zip) throws IOException {
+        Properties properties = new Properties();
+        properties.load(zip);
+        return properties;
+    }
+
+    private static File copy(ZipInputStream zip, File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            IOUtils.copy(zip, out);
+            out.close();
+            return file;
+        } catch (IOException e) {
+            IOUtils.closeQuietly(out);
+            FileUtils.deleteQuietly(file);
+            throw e;
+        }
+    }
+}
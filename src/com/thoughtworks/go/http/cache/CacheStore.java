@@ -0,0 +1,82 @@
+package com.thoughtworks.go.http.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * @understands where cached responses are kept when they are not in memory
+ *
+ * Bodies are stored exactly as they are given, so a store neither knows nor cares whether they are compressed.
+ */
+public interface CacheStore {
+    /**
+     * Returns the metadata stored for the given uri.
+     *
+     * @param uri the uri of the resource
+     * @return the metadata or null if nothing is stored for the uri
+     */
+    ResponseMetadata metadata(String uri);
+
+    /**
+     * Opens the body stored for the given uri.
+     *
+     * @param uri the uri of the resource
+     * @return the body or null if nothing is stored for the uri
+     * @throws IOException if the body could not be read
+     */
+    InputStream open(String uri) throws IOException;
+
+    /**
+     * Stores the body and metadata for the given uri, replacing whatever was stored before.
+     *
+     * @param uri the uri of the resource
+     * @param metadata the metadata of the response
+     * @param body the body of the response
+     * @throws IOException if the response could not be stored
+     */
+    void write(String uri, ResponseMetadata metadata, byte[] body) throws IOException;
+
+    /**
+     * Stores a body that has already been written to a file returned by {@link #newPendingFile()}. The store takes over
+     * the file.
+     *
+     * @param uri the uri of the resource
+     * @param metadata the metadata of the response
+     * @param body the file holding the body of the response
+     * @throws IOException if the response could not be stored
+     */
+    void write(String uri, ResponseMetadata metadata, File body) throws IOException;
+
+    /**
+     * Creates a file that a body can be written to while it is being received.
+     *
+     * @return an empty file
+     * @throws IOException if the file could not be created
+     */
+    File newPendingFile() throws IOException;
+
+    void remove(String uri);
+
+    /**
+     * Lists everything that is stored, so that the cache can be trimmed.
+     *
+     * @return the stored responses
+     */
+    List<StoredResponse> list();
+
+    /**
+     * Removes a response returned by {@link #list()}.
+     *
+     * @param response the response to remove
+     */
+    void evict(StoredResponse response);
+
+    /**
+     * Does a little of whatever housekeeping the store needs. This is called regularly, away from the requests.
+     *
+     * @throws IOException if the housekeeping failed
+     */
+    void maintain() throws IOException;
+}
@@ -0,0 +1,108 @@
+package com.thoughtworks.go.http.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * @understands the forms a response body can be compressed in on disk
+ *
+ * A compressed body is recognised by its first two bytes when it is read back, so bodies written with different
+ * compressions, or none at all, can be read from the same cache folder. Plain bodies are XML and can never be mistaken
+ * for either header.
+ */
+public enum Compression {
+    NONE {
+        public OutputStream compress(OutputStream body, int level) {
+            return body;
+        }
+    },
+    GZIP {
+        public OutputStream compress(OutputStream body, final int level) throws IOException {
+            return new GZIPOutputStream(body) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+    },
+    DEFLATE {
+        public OutputStream compress(OutputStream body, int level) {
+            final Deflater deflater = new Deflater(level);
+            return new DeflaterOutputStream(body, deflater) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+    };
+
+    /**
+     * Returns a stream that compresses whatever is written to it into the given stream.
+     *
+     * @param body the stream to write the compressed body to
+     * @param level the compression level from 0 to 9
+     * @return the stream to write the plain body to
+     * @throws IOException if the stream cannot be set up
+     */
+    public abstract OutputStream compress(OutputStream body, int level) throws IOException;
+
+    public byte[] compress(byte[] body, int level) throws IOException {
+        if (this == NONE) {
+            return body;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        OutputStream out = compress(compressed, level);
+        out.write(body);
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Returns the compression with the given name, which is one of 'none', 'gzip' or 'deflate'.
+     *
+     * @param name the name of the compression
+     * @return the compression
+     */
+    public static Compression named(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    /**
+     * Returns a stream that decompresses the given body in whichever way it was compressed.
+     *
+     * @param stored the body as it was stored
+     * @return the plain body
+     * @throws IOException if the body cannot be read
+     */
+    public static InputStream decompress(InputStream stored) throws IOException {
+        BufferedInputStream body = new BufferedInputStream(stored);
+        body.mark(2);
+        int first = body.read();
+        int second = body.read();
+        body.reset();
+        if ((first | (second << 8)) == GZIPInputStream.GZIP_MAGIC) {
+            return new GZIPInputStream(body);
+        }
+        if (isZlibHeader(first, second)) {
+            return new InflaterInputStream(body);
+        }
+        return body;
+    }
+
+    private static boolean isZlibHeader(int first, int second) {
+        return first >= 0 && second >= 0 && (first & 0x0f) == Deflater.DEFLATED && (first >> 4) <= 7 && ((first << 8) | second) % 31 == 0;
+    }
+}
@@ -0,0 +1,46 @@
+package com.thoughtworks.go.http.cache;
+
+import java.util.Comparator;
+
+/**
+ * @understands which cached responses to let go of first
+ *
+ * A response expires once it is older than its time to live, which is longer for immutable responses like completed
+ * stages and jobs than for volatile ones like feed pages. When the cache is too big, volatile responses are evicted
+ * before immutable ones and older ones before newer ones.
+ */
+public class EvictionPolicy implements Comparator<StoredResponse> {
+    private final long maxBytes;
+    private final long timeToLive;
+    private final long immutableTimeToLive;
+
+    /**
+     * @param maxBytes the size the cache is trimmed down to, or 0 for no limit
+     * @param timeToLive the time in milliseconds after which a volatile response expires, or 0 for never
+     * @param immutableTimeToLive the time in milliseconds after which an immutable response expires, or 0 for never
+     */
+    public EvictionPolicy(long maxBytes, long timeToLive, long immutableTimeToLive) {
+        this.maxBytes = maxBytes;
+        this.timeToLive = timeToLive;
+        this.immutableTimeToLive = immutableTimeToLive;
+    }
+
+    public boolean isExpired(StoredResponse response, long now) {
+        long ttl = response.getMetadata().isImmutable() ? immutableTimeToLive : timeToLive;
+        return ttl > 0 && now - response.getMetadata().getStoredAt() > ttl;
+    }
+
+    public boolean isTooBig(long bytes) {
+        return maxBytes > 0 && bytes > maxBytes;
+    }
+
+    public int compare(StoredResponse first, StoredResponse second) {
+        boolean firstImmutable = first.getMetadata().isImmutable();
+        if (firstImmutable != second.getMetadata().isImmutable()) {
+            return firstImmutable ? 1 : -1;
+        }
+        long firstStoredAt = first.getMetadata().getStoredAt();
+        long secondStoredAt = second.getMetadata().getStoredAt();
+        return firstStoredAt < secondStoredAt ? -1 : (firstStoredAt == secondStoredAt ? 0 : 1);
+    }
+}
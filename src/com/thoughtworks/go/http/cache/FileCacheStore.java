@@ -0,0 +1,246 @@
+package com.thoughtworks.go.http.cache;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @understands storing every cached response as a pair of files named after the hash of its uri
+ *
+ * Each response takes two files in one folder, which does not scale to as many responses as {@link SegmentCacheStore}
+ * does. The metadata file holds the etag, followed by a line saying whether the response is immutable, and the time a
+ * response was stored is the time its metadata file was written. The body file is named after the hash of the etag as
+ * well, so a metadata file always leads to the body that belongs with it.
+ * Responses are listed by the hash of their uri, since the uri itself is not stored, which also means they cannot be
+ * exported in a {@link CacheSnapshot}.
+ *
+ * The folder is scanned once when the store is created and the metadata of every response is held in memory, so
+ * looking a response up never touches the file system, which matters when the folder is on a network share. Only
+ * reading a body opens a file, and a body that turns out to be gone is forgotten.
+ *
+ * Every file is written under a temporary name and then renamed into place, body first, so several processes can share
+ * the folder without ever seeing a partly written file. The body of a replaced response is deleted once its metadata
+ * is replaced. What other processes write or delete shows up when {@link #maintain()} scans the folder again. Bodies
+ * that lost a race between two processes and pending files left behind by a crashed process are deleted then too.
+ *
+ * A cache folder written before bodies were named after their etag, with a body named after the hash of its uri alone
+ * and possibly a marker file saying it is immutable, is taken over when the store is created: every body is renamed
+ * into place and keeps the etag, immutability and age it had, so an old cache folder stays warm.
+ */
+public class FileCacheStore implements CacheStore {
+    private static final String ETAG_SUFFIX = "_etag";
+    private static final String IMMUTABLE = "immutable";
+    private static final String LEGACY_IMMUTABLE_SUFFIX = "_immutable";
+    private static final long ORPHAN_AGE = 60 * 60 * 1000;
+
+    private final File folder;
+    private final ConcurrentMap<String, ResponseMetadata> index = new ConcurrentHashMap<String, ResponseMetadata>();
+
+    public FileCacheStore(File folder) {
+        this.folder = folder;
+        importLegacy();
+        scan();
+    }
+
+    public ResponseMetadata metadata(String uri) {
+        return index.get(key(uri));
+    }
+
+    public InputStream open(String uri) throws IOException {
+        String key = key(uri);
+        ResponseMetadata metadata = index.get(key);
+        if (metadata == null) {
+            return null;
+        }
+        try {
+            return new BufferedInputStream(new FileInputStream(bodyFile(key, metadata.getEtag())));
+        } catch (FileNotFoundException e) {
+            index.remove(key, metadata);
+            return null;
+        }
+    }
+
+    public void write(String uri, ResponseMetadata metadata, byte[] body) throws IOException {
+        File pending = newPendingFile();
+        FileUtils.writeByteArrayToFile(pending, body);
+        publish(key(uri), metadata, pending);
+    }
+
+    public void write(String uri, ResponseMetadata metadata, File body) throws IOException {
+        publish(key(uri), metadata, body);
+    }
+
+    public File newPendingFile() throws IOException {
+        FileUtils.forceMkdir(folder);
+        return File.createTempFile("response", ".pending", folder);
+    }
+
+    public void remove(String uri) {
+        delete(key(uri));
+    }
+
+    public List<StoredResponse> list() {
+        List<StoredResponse> responses = new ArrayList<StoredResponse>();
+        for (Map.Entry<String, ResponseMetadata> entry : index.entrySet()) {
+            String key = entry.getKey();
+            ResponseMetadata metadata = entry.getValue();
+            responses.add(new StoredResponse(key, null, metadata, etagFile(key).length() + bodyFile(key, metadata.getEtag()).length()));
+        }
+        return responses;
+    }
+
+    public void evict(StoredResponse response) {
+        delete(response.getKey());
+    }
+
+    /**
+     * Scans the folder again to pick up what other processes have written or deleted. Then deletes bodies that no
+     * metadata leads to and pending files that were never published, once they are old enough that no process can still
+     * be about to publish them. Bodies in the layout used before bodies were named after their etag are taken over like
+     * when the store is created, and those without an etag are deleted once they are old enough.
+     */
+    public void maintain() {
+        importLegacy();
+        scan();
+        String[] names = folder.list();
+        long orphanedBefore = System.currentTimeMillis() - ORPHAN_AGE;
+        for (String name : names == null ? new String[0] : names) {
+            File file = new File(folder, name);
+            if (name.endsWith(".pending") && file.lastModified() < orphanedBefore) {
+                FileUtils.deleteQuietly(file);
+            } else if (name.matches("[0-9a-f]{32}") && file.lastModified() < orphanedBefore) {
+                FileUtils.deleteQuietly(file);
+            } else if (name.endsWith(LEGACY_IMMUTABLE_SUFFIX) && !new File(folder, name.substring(0, 32)).exists()) {
+                FileUtils.deleteQuietly(file);
+            } else if (name.matches("[0-9a-f]{32}_[0-9a-f]{32}") && file.lastModified() < orphanedBefore) {
+                ResponseMetadata metadata = metadataOf(name.substring(0, 32));
+                if (metadata == null || !name.equals(bodyFile(name.substring(0, 32), metadata.getEtag()).getName())) {
+                    FileUtils.deleteQuietly(file);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FileCacheStore && folder.getAbsoluteFile().equals(((FileCacheStore) o).folder.getAbsoluteFile());
+    }
+
+    @Override
+    public int hashCode() {
+        return folder.getAbsoluteFile().hashCode();
+    }
+
+    private synchronized void scan() {
+        String[] names = folder.list();
+        Set<String> files = new HashSet<String>(Arrays.asList(names == null ? new String[0] : names));
+        Map<String, ResponseMetadata> found = new HashMap<String, ResponseMetadata>();
+        for (String name : files) {
+            if (!name.endsWith(ETAG_SUFFIX)) {
+                continue;
+            }
+            String key = name.substring(0, name.length() - ETAG_SUFFIX.length());
+            ResponseMetadata metadata = metadataOf(key);
+            if (metadata != null && files.contains(bodyFile(key, metadata.getEtag()).getName())) {
+                found.put(key, metadata);
+            }
+        }
+        index.keySet().retainAll(found.keySet());
+        index.putAll(found);
+    }
+
+    private synchronized void importLegacy() {
+        String[] names = folder.list();
+        for (String key : names == null ? new String[0] : names) {
+            ResponseMetadata metadata = key.matches("[0-9a-f]{32}") ? metadataOf(key) : null;
+            if (metadata == null) {
+                continue;
+            }
+            try {
+                moveIntoPlace(new File(folder, key), bodyFile(key, metadata.getEtag()));
+                File immutableMarker = new File(folder, key + LEGACY_IMMUTABLE_SUFFIX);
+                if (immutableMarker.exists()) {
+                    File pendingMetadata = newPendingFile();
+                    FileUtils.writeStringToFile(pendingMetadata, metadata.getEtag() + "\n" + IMMUTABLE, "UTF-8");
+                    pendingMetadata.setLastModified(metadata.getStoredAt());
+                    moveIntoPlace(pendingMetadata, etagFile(key));
+                    FileUtils.deleteQuietly(immutableMarker);
+                }
+            } catch (IOException e) {
+                // another process took the body over first
+            }
+        }
+    }
+
+    private ResponseMetadata metadataOf(String key) {
+        File etagFile = etagFile(key);
+        try {
+            String[] lines = FileUtils.readFileToString(etagFile, "UTF-8").split("\n");
+            boolean immutable = lines.length > 1 ? lines[1].equals(IMMUTABLE) : new File(folder, key + LEGACY_IMMUTABLE_SUFFIX).exists();
+            return new ResponseMetadata(lines[0], etagFile.lastModified(), immutable);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private synchronized void publish(String key, ResponseMetadata metadata, File body) throws IOException {
+        ResponseMetadata replaced = metadataOf(key);
+        moveIntoPlace(body, bodyFile(key, metadata.getEtag()));
+        File pendingMetadata = newPendingFile();
+        FileUtils.writeStringToFile(pendingMetadata, metadata.getEtag() + (metadata.isImmutable() ? "\n" + IMMUTABLE : ""), "UTF-8");
+        moveIntoPlace(pendingMetadata, etagFile(key));
+        index.put(key, metadata);
+        if (replaced != null && !replaced.getEtag().equals(metadata.getEtag())) {
+            FileUtils.deleteQuietly(bodyFile(key, replaced.getEtag()));
+        }
+    }
+
+    private void moveIntoPlace(File pending, File file) throws IOException {
+        if (pending.renameTo(file)) {
+            return;
+        }
+        FileUtils.deleteQuietly(file);
+        if (!pending.renameTo(file)) {
+            FileUtils.deleteQuietly(pending);
+            throw new IOException(String.format("Could not move [%s] to [%s]", pending, file));
+        }
+    }
+
+    private synchronized void delete(String key) {
+        index.remove(key);
+        ResponseMetadata metadata = metadataOf(key);
+        FileUtils.deleteQuietly(etagFile(key));
+        if (metadata != null) {
+            FileUtils.deleteQuietly(bodyFile(key, metadata.getEtag()));
+        }
+    }
+
+    private String key(String uri) {
+        return DigestUtils.md5Hex(uri);
+    }
+
+    private File etagFile(String key) {
+        return new File(folder, key + ETAG_SUFFIX);
+    }
+
+    private File bodyFile(String key, String etag) {
+        return new File(folder, key + "_" + DigestUtils.md5Hex(etag));
+    }
+}
@@ -0,0 +1,350 @@
+package com.thoughtworks.go.http.cache;
+
+import com.thoughtworks.go.util.LruCache;
+import com.thoughtworks.go.util.SystemEnvironment;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ProxyOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @understands remembering the responses of the Go server along with their etags
+ *
+ * The most recently used responses are held in memory. Everything is also written to a {@link CacheStore} on disk so
+ * that it survives restarts. The disk is only read when a response is not found in memory, so revalidating a response
+ * that is held in memory does not touch the disk at all. Unless {@link SystemEnvironment#getCacheStore()} says otherwise,
+ * responses are kept in a {@link FileCacheStore}.
+ *
+ * Bodies are encoded as UTF-8 and compressed with {@link SystemEnvironment#getCacheCompression()} before they are
+ * written to disk. Whatever compression a body was written with, it is decompressed as it is read.
+ *
+ * A cache folder is kept within its size and age limits by a {@link CacheEvictor} in the background. A response that
+ * was evicted from the disk may still be served from memory until it is evicted from there too.
+ */
+public class ResponseCache {
+    private final CacheStore store;
+    private final LruCache<String, CachedResponse> memory;
+    private final Compression compression;
+    private final int compressionLevel;
+    private boolean evicting;
+
+    public ResponseCache(File folder, long maxBytesInMemory) {
+        this(store(folder), maxBytesInMemory);
+        CacheEvictor.schedule(store);
+        evicting = true;
+    }
+
+    public ResponseCache(CacheStore store, long maxBytesInMemory) {
+        this(store, maxBytesInMemory, Compression.named(SystemEnvironment.getCacheCompression()), SystemEnvironment.getCacheCompressionLevel());
+    }
+
+    public ResponseCache(CacheStore store, long maxBytesInMemory, Compression compression, int compressionLevel) {
+        this.store = store;
+        this.compression = compression;
+        this.compressionLevel = compressionLevel;
+        this.memory = new LruCache<String, CachedResponse>(maxBytesInMemory) {
+            @Override
+            protected long weigh(CachedResponse response) {
+                return response.weight();
+            }
+        };
+    }
+
+    /**
+     * Stops evicting from the cache folder in the background, unless another cache still uses the same folder. The
+     * cache should not be used after it is closed.
+     */
+    public synchronized void close() {
+        if (evicting) {
+            CacheEvictor.unschedule(store);
+            evicting = false;
+        }
+    }
+
+    CacheStore store() {
+        return store;
+    }
+
+    static CacheStore store(File folder) {
+        if ("segments".equals(SystemEnvironment.getCacheStore())) {
+            return SegmentCacheStore.open(folder, SystemEnvironment.getCacheSegmentSize());
+        }
+        return new FileCacheStore(folder);
+    }
+
+    /**
+     * Returns the etag of the cached response for the given uri.
+     *
+     * @param uri the uri of the resource
+     * @return the etag or null if there is no cached response
+     */
+    public String etag(String uri) {
+        ResponseMetadata metadata = metadata(uri);
+        return metadata == null ? null : metadata.getEtag();
+    }
+
+    /**
+     * Returns true if the cached response for the given uri can be used without revalidating it with the server.
+     *
+     * @param uri the uri of the resource
+     * @return true if there is a cached response that never changes
+     */
+    public boolean isImmutable(String uri) {
+        ResponseMetadata metadata = metadata(uri);
+        return metadata != null && metadata.isImmutable();
+    }
+
+    /**
+     * Returns the metadata of the cached response for the given uri.
+     *
+     * @param uri the uri of the resource
+     * @return the metadata or null if there is no cached response
+     */
+    public ResponseMetadata metadata(String uri) {
+        CachedResponse response = memory.get(uri);
+        if (response != null) {
+            return response.metadata;
+        }
+        ResponseMetadata metadata = store.metadata(uri);
+        if (metadata != null) {
+            memory.put(uri, new CachedResponse(metadata, null));
+        }
+        return metadata;
+    }
+
+    /**
+     * Returns how long ago the cached response for the given uri was stored or last confirmed by the server to be
+     * current, whichever is later.
+     *
+     * @param uri the uri of the resource
+     * @return the age in milliseconds or -1 if there is no cached response
+     */
+    public long age(String uri) {
+        ResponseMetadata metadata = metadata(uri);
+        if (metadata == null) {
+            return -1;
+        }
+        CachedResponse response = memory.get(uri);
+        long validatedAt = response == null ? metadata.getStoredAt() : response.validatedAt;
+        return Math.max(0, System.currentTimeMillis() - validatedAt);
+    }
+
+    /**
+     * Remembers that the server has just confirmed the cached response for the given uri to be current. This is only
+     * remembered in memory.
+     *
+     * @param uri the uri of the resource
+     */
+    public void validated(String uri) {
+        metadata(uri);
+        CachedResponse response = memory.get(uri);
+        if (response != null) {
+            response.validatedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Returns the cached response body for the given uri.
+     *
+     * @param uri the uri of the resource
+     * @return the response body or null if there is no cached response
+     */
+    public String body(String uri) {
+        CachedResponse response = memory.get(uri);
+        if (response != null && response.body != null) {
+            return response.body;
+        }
+        ResponseMetadata metadata = store.metadata(uri);
+        String body = metadata == null ? null : readBody(uri);
+        if (body == null) {
+            return null;
+        }
+        CachedResponse loaded = new CachedResponse(metadata, body);
+        if (response != null && response.metadata.getEtag().equals(metadata.getEtag())) {
+            loaded.validatedAt = response.validatedAt;
+        }
+        memory.put(uri, loaded);
+        return body;
+    }
+
+    /**
+     * Caches the response for the given uri both in memory and on disk.
+     *
+     * @param uri the uri of the resource
+     * @param metadata the etag sent by the server for this response and whether it can change
+     * @param body the response body
+     */
+    public void put(String uri, ResponseMetadata metadata, String body) {
+        memory.put(uri, new CachedResponse(metadata, body));
+        try {
+            store.write(uri, metadata, compression.compress(body.getBytes("UTF-8"), compressionLevel));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Caches the response for the given uri, but writes the body to disk exactly as it was transferred i.e. gzipped
+     * instead of compressing it again. It is decompressed when it is read back.
+     *
+     * @param uri the uri of the resource
+     * @param metadata the etag sent by the server for this response and whether it can change
+     * @param body the response body
+     * @param gzippedBody the gzipped response body as sent by the server
+     */
+    public void put(String uri, ResponseMetadata metadata, String body, byte[] gzippedBody) {
+        memory.put(uri, new CachedResponse(metadata, body));
+        try {
+            store.write(uri, metadata, gzippedBody);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the cached response body for the given uri as a stream, without reading it all into memory if it is only
+     * on disk.
+     *
+     * @param uri the uri of the resource
+     * @return the response body or null if there is no cached response
+     */
+    public InputStream stream(String uri) {
+        CachedResponse response = memory.get(uri);
+        try {
+            if (response != null && response.body != null) {
+                return new ByteArrayInputStream(response.body.getBytes("UTF-8"));
+            }
+            return openBody(uri);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Opens a stream that the response body for the given uri can be written to as it arrives. The body is compressed
+     * as it is written. Any previously cached response is forgotten straight away. The response is served from the
+     * cache only once it is published, so a partly written body is never served.
+     *
+     * @param uri the uri of the resource
+     * @param metadata the etag sent by the server for this response and whether it can change
+     * @return the stream to write the body to
+     */
+    public PendingResponse storing(String uri, ResponseMetadata metadata) {
+        return storing(uri, metadata, compression);
+    }
+
+    /**
+     * Same as {@link #storing(String, ResponseMetadata)}, but the body is written exactly as it was transferred i.e.
+     * gzipped.
+     *
+     * @param uri the uri of the resource
+     * @param metadata the etag sent by the server for this response and whether it can change
+     * @return the stream to write the gzipped body to
+     */
+    public PendingResponse storingGzipped(String uri, ResponseMetadata metadata) {
+        return storing(uri, metadata, Compression.NONE);
+    }
+
+    private PendingResponse storing(String uri, ResponseMetadata metadata, Compression compression) {
+        remove(uri);
+        try {
+            return new PendingResponse(uri, metadata, store.newPendingFile(), compression);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Forgets the cached response for the given uri.
+     *
+     * @param uri the uri of the resource
+     */
+    public void remove(String uri) {
+        memory.remove(uri);
+        store.remove(uri);
+    }
+
+    private String readBody(String uri) {
+        InputStream body = null;
+        try {
+            body = openBody(uri);
+            return body == null ? null : IOUtils.toString(body, "UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            IOUtils.closeQuietly(body);
+        }
+    }
+
+    private InputStream openBody(String uri) throws IOException {
+        InputStream stored = store.open(uri);
+        return stored == null ? null : Compression.decompress(stored);
+    }
+
+    /**
+     * @understands a response body that is being written to the cache
+     */
+    public class PendingResponse extends ProxyOutputStream {
+        private final String uri;
+        private final ResponseMetadata metadata;
+        private final File body;
+
+        private PendingResponse(String uri, ResponseMetadata metadata, File body, Compression compression) throws IOException {
+            super(compression.compress(new BufferedOutputStream(FileUtils.openOutputStream(body)), compressionLevel));
+            this.uri = uri;
+            this.metadata = metadata;
+            this.body = body;
+        }
+
+        /**
+         * Closes the stream and starts serving the written body from the cache.
+         *
+         * @throws IOException if the body could not be written
+         */
+        public void publish() throws IOException {
+            publish(metadata);
+        }
+
+        /**
+         * Same as {@link #publish()}, but with metadata that could only be told once the whole body was written, e.g.
+         * whether the response can ever change.
+         *
+         * @param metadata the metadata to store the body with
+         * @throws IOException if the body could not be written
+         */
+        public void publish(ResponseMetadata metadata) throws IOException {
+            close();
+            store.write(uri, metadata, body);
+            memory.put(uri, new CachedResponse(metadata, null));
+        }
+
+        /**
+         * Closes the stream and throws away whatever was written.
+         */
+        public void discard() {
+            IOUtils.closeQuietly(this);
+            FileUtils.deleteQuietly(body);
+        }
+    }
+
+    private static class CachedResponse {
+        private final ResponseMetadata metadata;
+        private final String body;
+        private volatile long validatedAt;
+
+        private CachedResponse(ResponseMetadata metadata, String body) {
+            this.metadata = metadata;
+            this.body = body;
+            this.validatedAt = metadata.getStoredAt();
+        }
+
+        private long weight() {
+            return 2L * (metadata.getEtag().length() + (body == null ? 0 : body.length()));
+        }
+    }
+}
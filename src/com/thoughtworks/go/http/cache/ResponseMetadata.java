@@ -0,0 +1,43 @@
+package com.thoughtworks.go.http.cache;
+
+/**
+ * @understands what is remembered about a cached response besides its body
+ */
+public class ResponseMetadata {
+    private final String etag;
+    private final long storedAt;
+    private final boolean immutable;
+
+    public ResponseMetadata(String etag, long storedAt, boolean immutable) {
+        this.etag = etag;
+        this.storedAt = storedAt;
+        this.immutable = immutable;
+    }
+
+    public ResponseMetadata(String etag, boolean immutable) {
+        this(etag, System.currentTimeMillis(), immutable);
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Returns when the response was cached.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getStoredAt() {
+        return storedAt;
+    }
+
+    /**
+     * Returns true if the resource can never change again, like a completed stage, so the cached response can be used
+     * without asking the server.
+     *
+     * @return true if the response never needs revalidating
+     */
+    public boolean isImmutable() {
+        return immutable;
+    }
+}
@@ -0,0 +1,691 @@
+package com.thoughtworks.go.http.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @understands storing cached responses by appending them to a few large segment files
+ *
+ * Every response is appended to the active segment as a record of its uri, metadata and body, and a record with no body
+ * marks a removal. An index of where the latest body of every uri lives is held in memory and rebuilt by replaying the
+ * segments when the store is opened. Bodies are read through memory mapped segments, so a lookup costs no more than a
+ * mapped read. Once the active segment reaches its maximum size a new one is started. As a segment is mapped as a whole,
+ * no segment ever grows past {@link #MAX_SEGMENT_SIZE}: a larger maximum size is lowered to it, a new segment is started
+ * before a record would take the active one past it, and writing a response too large for a segment of its own fails.
+ *
+ * Replaced and removed responses leave dead records behind. {@link #maintain()} compacts the oldest segment once more
+ * than half of the store is dead, by copying its live records to the active segment and deleting it. It copies about
+ * {@link #COMPACTION_STEP} bytes at a time and lets go of the store and the lock in between, so lookups and appends, in
+ * this process or another, never wait for a whole segment to be copied. Removals in a segment are only dropped when it
+ * is the oldest, as an older segment could otherwise bring the removed response back.
+ *
+ * Several processes may share a folder. Appends and compactions take an exclusive lock on a lock file in the folder and
+ * always go to the end of the newest segment, so records are never interleaved and an etag is always stored together
+ * with its body. Before it appends or maintains the folder, a store reads whatever other processes have appended since
+ * it last looked, so their responses show up within one eviction interval. A record that a crashed process only partly
+ * wrote is truncated by the next process to take the lock. Only the active segment is ever opened for writing, so a
+ * segment that another process has compacted away is never brought back. A body that turns out to be in such a segment
+ * is a miss until the store has caught up with the folder. Within a process, stores are shared through
+ * {@link #open(File, long)}.
+ */
+public class SegmentCacheStore implements CacheStore {
+    private static final int MAGIC = 0x474f4332;
+    private static final int REMOVED = -1;
+    private static final int IMMUTABLE = 1;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String LOCK_FILE = "segments.lock";
+    private static final int NONE = 0;
+    static final long COMPACTION_STEP = 1024 * 1024;
+    static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+    private static final Map<File, SegmentCacheStore> openStores = new HashMap<File, SegmentCacheStore>();
+
+    private final File folder;
+    private final long maxSegmentSize;
+    private final long segmentLimit;
+    private final Map<String, Location> index = new HashMap<String, Location>();
+    private final Map<Integer, MappedByteBuffer> mappedSegments = new HashMap<Integer, MappedByteBuffer>();
+    private final Map<Integer, Long> liveBytes = new HashMap<Integer, Long>();
+    private final Map<Integer, Long> replayed = new HashMap<Integer, Long>();
+    private final List<Integer> segments = new ArrayList<Integer>();
+    private FileChannel lockFile;
+    private int activeSegment;
+    private FileChannel active;
+
+    SegmentCacheStore(File folder, long maxSegmentSize) throws IOException {
+        this(folder, maxSegmentSize, MAX_SEGMENT_SIZE);
+    }
+
+    SegmentCacheStore(File folder, long maxSegmentSize, long segmentLimit) throws IOException {
+        this.folder = folder;
+        this.segmentLimit = segmentLimit;
+        this.maxSegmentSize = Math.min(maxSegmentSize, segmentLimit);
+        start();
+    }
+
+    private void start() throws IOException {
+        FileUtils.forceMkdir(folder);
+        lockFile = new RandomAccessFile(new File(folder, LOCK_FILE), "rw").getChannel();
+        FileLock lock = lockFile.lock();
+        try {
+            catchUp();
+            if (segments.isEmpty()) {
+                segments.add(1);
+            }
+            activeSegment = newestSegment();
+            active = channel(activeSegment);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Returns the store for the given folder, opening it if it is not open already. If its folder has been deleted, the
+     * store that is already open starts again from an empty folder, so whoever holds on to it carries on using it.
+     *
+     * @param folder the folder the segments are kept in
+     * @param maxSegmentSize the size in bytes beyond which a new segment is started
+     * @return the store
+     */
+    public static synchronized SegmentCacheStore open(File folder, long maxSegmentSize) {
+        File key = folder.getAbsoluteFile();
+        SegmentCacheStore store = openStores.get(key);
+        try {
+            if (store == null) {
+                store = new SegmentCacheStore(folder, maxSegmentSize);
+                openStores.put(key, store);
+            } else if (!store.segmentFile(store.activeSegment).exists()) {
+                store.restart();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open the cache in " + folder, e);
+        }
+        return store;
+    }
+
+    public synchronized ResponseMetadata metadata(String uri) {
+        Location location = index.get(uri);
+        return location == null ? null : location.metadata;
+    }
+
+    public InputStream open(String uri) throws IOException {
+        ByteBuffer body;
+        synchronized (this) {
+            Location location = index.get(uri);
+            if (location == null) {
+                return null;
+            }
+            body = body(location);
+            if (body == null) {
+                lost(location.segment);
+                location = index.get(uri);
+                body = location == null ? null : body(location);
+            }
+        }
+        return body == null ? null : new ByteBufferInputStream(body);
+    }
+
+    public void write(String uri, ResponseMetadata metadata, byte[] body) throws IOException {
+        append(uri, metadata, body.length, ByteBuffer.wrap(body), null);
+    }
+
+    public void write(String uri, ResponseMetadata metadata, File body) throws IOException {
+        FileInputStream in = new FileInputStream(body);
+        try {
+            append(uri, metadata, body.length(), null, in.getChannel());
+        } finally {
+            IOUtils.closeQuietly(in);
+            FileUtils.deleteQuietly(body);
+        }
+    }
+
+    public File newPendingFile() throws IOException {
+        FileUtils.forceMkdir(folder);
+        return File.createTempFile("response", ".pending", folder);
+    }
+
+    public void remove(String uri) {
+        try {
+            synchronized (this) {
+                if (index.containsKey(uri)) {
+                    append(uri, null, 0, null, null);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized List<StoredResponse> list() {
+        List<StoredResponse> responses = new ArrayList<StoredResponse>();
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            responses.add(new StoredResponse(entry.getKey(), entry.getKey(), entry.getValue().metadata, entry.getValue().recordLength));
+        }
+        return responses;
+    }
+
+    public void evict(StoredResponse response) {
+        remove(response.getKey());
+    }
+
+    /**
+     * Reads what other processes have appended and compacts the oldest segment if more than half of the store is dead.
+     * Call it repeatedly to compact the whole store one segment at a time.
+     *
+     * @throws IOException if the segment could not be compacted
+     */
+    public void maintain() throws IOException {
+        int segment = segmentToCompact();
+        for (long offset = 0; segment != NONE && offset >= 0; ) {
+            offset = compactStep(segment, offset);
+        }
+    }
+
+    private synchronized int segmentToCompact() throws IOException {
+        FileLock lock = lockFile.lock();
+        try {
+            catchUp();
+            return deadBytes() > size() / 2 ? segments.get(0) : NONE;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Copies the live records of the segment that start from the given offset on, until about
+     * {@link #COMPACTION_STEP} bytes of it have been read, and deletes the segment once all of it has been copied.
+     *
+     * @return the offset to carry on from or -1 if the segment is gone
+     */
+    private synchronized long compactStep(int segment, long from) throws IOException {
+        FileLock lock = lockFile.lock();
+        try {
+            catchUp();
+            if (!segments.contains(segment)) {
+                return -1;
+            }
+            long to = copyLiveRecords(segment, from, from + COMPACTION_STEP);
+            if (to < 0) {
+                delete(segment);
+            }
+            return to;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Compacts every segment, leaving only live records behind.
+     *
+     * @throws IOException if the segments could not be compacted
+     */
+    public synchronized void compact() throws IOException {
+        FileLock lock = lockFile.lock();
+        try {
+            catchUp();
+            for (Integer segment : new ArrayList<Integer>(segments)) {
+                compact(segment);
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    synchronized long deadBytes() {
+        return size() - liveBytes();
+    }
+
+    private long size() {
+        long size = 0;
+        for (Integer segment : segments) {
+            size += segmentFile(segment).length();
+        }
+        return size;
+    }
+
+    private void compact(int segment) throws IOException {
+        copyLiveRecords(segment, 0, Long.MAX_VALUE);
+        delete(segment);
+    }
+
+    /**
+     * Copies the live records of the segment that start between the given offsets to the active segment.
+     *
+     * @return the offset of the first record that was not looked at or -1 if there are no more records
+     */
+    private long copyLiveRecords(int segment, long from, long until) throws IOException {
+        if (segment == activeSegment) {
+            startSegment(newestSegment() + 1);
+        }
+        boolean oldest = segments.get(0) == segment;
+        MappedByteBuffer mapped = mapped(segment, segmentFile(segment).length());
+        ByteBuffer records = mapped == null ? ByteBuffer.allocate(0) : mapped.duplicate();
+        int offset = (int) from;
+        while (offset < records.limit()) {
+            if (offset >= until) {
+                return offset;
+            }
+            Record record = Record.read(records, offset);
+            if (record == null) {
+                break;
+            }
+            Location location = index.get(record.uri);
+            if (record.metadata != null && location != null && location.segment == segment && location.bodyOffset == record.bodyOffset) {
+                rollIfFull();
+                appendRecord(record.uri, location.metadata, location.bodyLength, body(location), null);
+            } else if (record.metadata == null && location == null && !oldest) {
+                rollIfFull();
+                appendRecord(record.uri, null, 0, null, null);
+            }
+            offset += record.length;
+        }
+        return -1;
+    }
+
+    private void delete(int segment) {
+        forget(segment);
+        FileUtils.deleteQuietly(segmentFile(segment));
+    }
+
+    /**
+     * Drops everything known about a segment that is gone or shorter than it was, and reads the folder again to find out
+     * where its responses live now.
+     */
+    private void lost(int segment) throws IOException {
+        forget(segment);
+        forgetLocations(segment);
+        FileLock lock = lockFile.lock();
+        try {
+            catchUp();
+        } finally {
+            lock.release();
+        }
+    }
+
+    private void forget(int segment) {
+        segments.remove((Integer) segment);
+        liveBytes.remove(segment);
+        replayed.remove(segment);
+        mappedSegments.remove(segment);
+    }
+
+    /**
+     * Forgets everything about the segments and reads the folder again from scratch, for when the folder was deleted
+     * from under the store. Bodies that were already opened can still be read to the end.
+     */
+    private synchronized void restart() throws IOException {
+        closeQuietly(active);
+        closeQuietly(lockFile);
+        active = null;
+        index.clear();
+        mappedSegments.clear();
+        liveBytes.clear();
+        replayed.clear();
+        segments.clear();
+        start();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the channel is given up on anyway
+        }
+    }
+
+    private synchronized void append(String uri, ResponseMetadata metadata, long bodyLength, ByteBuffer body, FileChannel bodyFile) throws IOException {
+        FileLock lock = lockFile.lock();
+        try {
+            catchUp();
+            rollIfFull();
+            appendRecord(uri, metadata, bodyLength, body, bodyFile);
+        } finally {
+            lock.release();
+        }
+    }
+
+    private void rollIfFull() throws IOException {
+        if (active.size() >= maxSegmentSize) {
+            startSegment(newestSegment() + 1);
+        }
+    }
+
+    private int newestSegment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private void appendRecord(String uri, ResponseMetadata metadata, long bodyLength, ByteBuffer body, FileChannel bodyFile) throws IOException {
+        ByteBuffer header = Record.header(uri, metadata, bodyLength);
+        if (header.limit() + bodyLength > segmentLimit) {
+            throw new IOException(String.format("The response to [%s] is too large to be cached: %d bytes", uri, bodyLength));
+        }
+        if (active.size() + header.limit() + bodyLength > segmentLimit) {
+            startSegment(newestSegment() + 1);
+        }
+        long recordOffset = active.size();
+        writeFully(header, recordOffset);
+        long bodyOffset = recordOffset + header.limit();
+        if (body != null) {
+            writeFully(body, bodyOffset);
+        } else if (bodyFile != null) {
+            for (long copied = 0; copied < bodyLength; ) {
+                copied += active.transferFrom(bodyFile, bodyOffset + copied, bodyLength - copied);
+            }
+        }
+        long recordLength = header.limit() + bodyLength;
+        index(uri, metadata == null ? null : new Location(activeSegment, bodyOffset, bodyLength, metadata, recordLength));
+        replayed.put(activeSegment, recordOffset + recordLength);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += active.write(buffer, position);
+        }
+    }
+
+    private void index(String uri, Location location) {
+        Location replaced = location == null ? index.remove(uri) : index.put(uri, location);
+        if (replaced != null) {
+            addLiveBytes(replaced.segment, -replaced.recordLength);
+        }
+        if (location != null) {
+            addLiveBytes(location.segment, location.recordLength);
+        }
+    }
+
+    private void addLiveBytes(int segment, long bytes) {
+        Long live = liveBytes.get(segment);
+        liveBytes.put(segment, (live == null ? 0 : live) + bytes);
+    }
+
+    private long liveBytes() {
+        long live = 0;
+        for (Long bytes : liveBytes.values()) {
+            live += bytes;
+        }
+        return live;
+    }
+
+    /**
+     * Indexes the records appended to the segments since they were last replayed, by this or any other process, and
+     * forgets the segments that another process has compacted. Records must only ever be appended to the newest segment,
+     * or replaying the segments in order would bring back older responses, so this moves on to whichever segment is
+     * newest now. Must be called with the lock held.
+     */
+    private void catchUp() throws IOException {
+        List<Integer> onDisk = segmentsOnDisk();
+        for (Integer segment : onDisk) {
+            if (!segments.contains(segment)) {
+                segments.add(segment);
+            }
+        }
+        Collections.sort(segments);
+        for (Integer segment : new ArrayList<Integer>(segments)) {
+            if (onDisk.contains(segment)) {
+                replay(segment);
+            } else {
+                forget(segment);
+                forgetLocations(segment);
+            }
+        }
+        if (active != null && (segments.isEmpty() || activeSegment != newestSegment())) {
+            active.close();
+            if (segments.isEmpty()) {
+                FileUtils.forceMkdir(folder);
+                startSegment(activeSegment + 1);
+            } else {
+                activeSegment = newestSegment();
+                active = channel(activeSegment);
+            }
+        }
+    }
+
+    private void replay(int segment) throws IOException {
+        FileChannel channel = readChannel(segment);
+        try {
+            long size = Math.min(channel.size(), segmentLimit);
+            Long from = replayed.get(segment);
+            int offset = from == null ? 0 : from.intValue();
+            if (offset >= size) {
+                return;
+            }
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (offset < size) {
+                Record record = Record.read(records, offset);
+                if (record == null) {
+                    if (size == channel.size()) {
+                        truncate(segment, offset);
+                    }
+                    break;
+                }
+                index(record.uri, record.metadata == null ? null : new Location(segment, record.bodyOffset, record.bodyLength, record.metadata, record.length));
+                offset += record.length;
+            }
+            replayed.put(segment, (long) offset);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void forgetLocations(int segment) {
+        for (Iterator<Location> locations = index.values().iterator(); locations.hasNext(); ) {
+            if (locations.next().segment == segment) {
+                locations.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the body at the given location, or null if its segment is gone or shorter than the location says.
+     */
+    private ByteBuffer body(Location location) throws IOException {
+        MappedByteBuffer mapped = mapped(location.segment, location.bodyOffset + location.bodyLength);
+        if (mapped == null) {
+            return null;
+        }
+        ByteBuffer body = mapped.duplicate();
+        body.position((int) location.bodyOffset);
+        body.limit((int) (location.bodyOffset + location.bodyLength));
+        return body;
+    }
+
+    /**
+     * Maps the segment up to at least the given end.
+     *
+     * @return the mapped segment or null if the segment is gone or does not reach that far
+     */
+    private MappedByteBuffer mapped(int segment, long end) throws IOException {
+        MappedByteBuffer mapped = mappedSegments.get(segment);
+        if (mapped == null || mapped.capacity() < end) {
+            FileChannel channel;
+            try {
+                channel = segment == activeSegment ? active : readChannel(segment);
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+            try {
+                if (channel.size() < end) {
+                    return null;
+                }
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), segmentLimit));
+            } finally {
+                if (channel != active) {
+                    channel.close();
+                }
+            }
+            mappedSegments.put(segment, mapped);
+        }
+        return mapped;
+    }
+
+    private void startSegment(int segment) throws IOException {
+        active.close();
+        activeSegment = segment;
+        active = channel(segment);
+        segments.add(segment);
+        replayed.put(segment, 0L);
+    }
+
+    private FileChannel channel(int segment) throws IOException {
+        return new RandomAccessFile(segmentFile(segment), "rw").getChannel();
+    }
+
+    private FileChannel readChannel(int segment) throws IOException {
+        return new RandomAccessFile(segmentFile(segment), "r").getChannel();
+    }
+
+    private void truncate(int segment, long length) throws IOException {
+        if (segment == activeSegment && active != null) {
+            active.truncate(length);
+            return;
+        }
+        RandomAccessFile file = new RandomAccessFile(segmentFile(segment), "rw");
+        try {
+            file.setLength(length);
+        } finally {
+            file.close();
+        }
+    }
+
+    private List<Integer> segmentsOnDisk() {
+        List<Integer> segments = new ArrayList<Integer>();
+        String[] names = folder.list();
+        for (String name : names == null ? new String[0] : names) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                segments.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(int segment) {
+        return new File(folder, String.format("%s%08d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * A record as laid out in a segment: magic, uri, etag (or -1 for a removal), time stored, flags and body.
+     */
+    private static class Record {
+        private final String uri;
+        private final ResponseMetadata metadata;
+        private final int bodyOffset;
+        private final int bodyLength;
+        private final int length;
+
+        private Record(String uri, ResponseMetadata metadata, int bodyOffset, int bodyLength, int length) {
+            this.uri = uri;
+            this.metadata = metadata;
+            this.bodyOffset = bodyOffset;
+            this.bodyLength = bodyLength;
+            this.length = length;
+        }
+
+        private static ByteBuffer header(String uri, ResponseMetadata metadata, long bodyLength) throws IOException {
+            byte[] uriBytes = uri.getBytes("UTF-8");
+            byte[] etagBytes = metadata == null ? new byte[0] : metadata.getEtag().getBytes("UTF-8");
+            ByteBuffer header = ByteBuffer.allocate(25 + uriBytes.length + etagBytes.length);
+            header.putInt(MAGIC).putInt(uriBytes.length).put(uriBytes);
+            header.putInt(metadata == null ? REMOVED : etagBytes.length).put(etagBytes);
+            header.putLong(metadata == null ? 0 : metadata.getStoredAt());
+            header.put((byte) (metadata != null && metadata.isImmutable() ? IMMUTABLE : 0));
+            header.putInt((int) bodyLength);
+            header.flip();
+            return header;
+        }
+
+        /**
+         * Reads the record at the given offset.
+         *
+         * @return the record or null if it is not a whole record
+         */
+        private static Record read(ByteBuffer records, int offset) throws IOException {
+            try {
+                records.position(offset);
+                if (records.getInt() != MAGIC) {
+                    return null;
+                }
+                String uri = string(records, records.getInt());
+                int etagLength = records.getInt();
+                String etag = etagLength == REMOVED ? null : string(records, etagLength);
+                long storedAt = records.getLong();
+                boolean immutable = (records.get() & IMMUTABLE) != 0;
+                int bodyLength = records.getInt();
+                int bodyOffset = records.position();
+                if (bodyLength < 0 || bodyOffset + bodyLength > records.limit()) {
+                    return null;
+                }
+                ResponseMetadata metadata = etag == null ? null : new ResponseMetadata(etag, storedAt, immutable);
+                return new Record(uri, metadata, bodyOffset, bodyLength, bodyOffset - offset + bodyLength);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        private static String string(ByteBuffer buffer, int length) throws IOException {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, "UTF-8");
+        }
+    }
+
+    private static class Location {
+        private final int segment;
+        private final long bodyOffset;
+        private final long bodyLength;
+        private final ResponseMetadata metadata;
+        private final long recordLength;
+
+        private Location(int segment, long bodyOffset, long bodyLength, ResponseMetadata metadata, long recordLength) {
+            this.segment = segment;
+            this.bodyOffset = bodyOffset;
+            this.bodyLength = bodyLength;
+            this.metadata = metadata;
+            this.recordLength = recordLength;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.thoughtworks.go.http.cache;
+
+/**
+ * @understands a response held by a {@link CacheStore}, as seen when deciding what to evict or export
+ */
+public class StoredResponse {
+    private final String key;
+    private final String uri;
+    private final ResponseMetadata metadata;
+    private final long size;
+
+    public StoredResponse(String key, String uri, ResponseMetadata metadata, long size) {
+        this.key = key;
+        this.uri = uri;
+        this.metadata = metadata;
+        this.size = size;
+    }
+
+    /**
+     * Returns what the store knows the response by. This is not necessarily its uri.
+     *
+     * @return the key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the uri of the response, if the store knows it.
+     *
+     * @return the uri or null
+     */
+    public String getUri() {
+        return uri;
+    }
+
+    public ResponseMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Returns the space the response takes up in the store.
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+}
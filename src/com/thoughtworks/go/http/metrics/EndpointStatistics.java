@@ -0,0 +1,94 @@
+package com.thoughtworks.go.http.metrics;
+
+/**
+ * @understands the counts, latencies and volume of requests for one type of resource
+ *
+ * Latencies are counted in buckets. A request falls in the first bucket whose bound it does not exceed, or in the last
+ * bucket if it is slower than every bound.
+ */
+public class EndpointStatistics implements EndpointStatisticsMBean {
+    private static final long[] LATENCY_BOUNDS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, Long.MAX_VALUE};
+
+    private long requests;
+    private long ok;
+    private long notModified;
+    private long errors;
+    private long bytesTransferred;
+    private long cacheHits;
+    private long totalLatency;
+    private long[] latencyHistogram = new long[LATENCY_BOUNDS.length];
+
+    synchronized void record(int returnCode, long latencyMillis, long bytes, boolean servedFromCache) {
+        requests++;
+        if (returnCode == 304) {
+            notModified++;
+        } else if (returnCode >= 200 && returnCode < 300) {
+            ok++;
+        } else {
+            errors++;
+        }
+        if (servedFromCache) {
+            cacheHits++;
+        }
+        bytesTransferred += bytes;
+        totalLatency += latencyMillis;
+        latencyHistogram[bucket(latencyMillis)]++;
+    }
+
+    private int bucket(long latencyMillis) {
+        for (int i = 0; i < LATENCY_BOUNDS.length; i++) {
+            if (latencyMillis <= LATENCY_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return LATENCY_BOUNDS.length - 1;
+    }
+
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    public synchronized long getOk() {
+        return ok;
+    }
+
+    public synchronized long getNotModified() {
+        return notModified;
+    }
+
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    public synchronized long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * Returns the share of the requests that were answered from the cache, either after the server said they were not
+     * modified or without asking the server at all, because the cached response was finished, still fresh or could be
+     * served stale while it is revalidated. Failures that are not asked for again for a while do not count as hits.
+     *
+     * @return a ratio between 0 and 1
+     */
+    public synchronized double getCacheHitRatio() {
+        return requests == 0 ? 0 : (double) cacheHits / requests;
+    }
+
+    public synchronized double getMeanLatency() {
+        return requests == 0 ? 0 : (double) totalLatency / requests;
+    }
+
+    public long[] getLatencyHistogramBounds() {
+        return LATENCY_BOUNDS.clone();
+    }
+
+    public synchronized long[] getLatencyHistogram() {
+        return latencyHistogram.clone();
+    }
+
+    public synchronized void reset() {
+        requests = ok = notModified = errors = bytesTransferred = cacheHits = totalLatency = 0;
+        latencyHistogram = new long[LATENCY_BOUNDS.length];
+    }
+}
@@ -0,0 +1,26 @@
+package com.thoughtworks.go.http.metrics;
+
+/**
+ * @understands what is exposed over JMX about the requests for one type of resource
+ */
+public interface EndpointStatisticsMBean {
+    long getRequests();
+
+    long getOk();
+
+    long getNotModified();
+
+    long getErrors();
+
+    long getBytesTransferred();
+
+    double getCacheHitRatio();
+
+    double getMeanLatency();
+
+    long[] getLatencyHistogramBounds();
+
+    long[] getLatencyHistogram();
+
+    void reset();
+}
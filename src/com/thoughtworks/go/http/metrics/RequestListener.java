@@ -0,0 +1,24 @@
+package com.thoughtworks.go.http.metrics;
+
+import com.thoughtworks.go.http.ResourceType;
+
+/**
+ * @understands being told about every request sent to the Go server
+ *
+ * Listeners are called on the thread that made the request, so they should be quick and thread safe.
+ */
+public interface RequestListener {
+    /**
+     * Called once a request completes, whether it succeeded or not.
+     *
+     * @param type the type of the resource requested
+     * @param returnCode the http status returned by the server or 0 if the server could not be reached
+     * @param latencyMillis the time taken from sending the request to reading the whole response
+     * @param bytes the number of bytes of response body transferred over the network
+     * @param servedFromCache true if the cached response was used, either because the server said the resource was not
+     * modified or because the resource is finished and the server was not asked at all, in which case the return code
+     * is 200 and the latency and bytes are 0. A failure that the server returned a short while ago and that is not asked
+     * for again is reported with the code returned then, no latency and no bytes, and is not served from the cache
+     */
+    void requestCompleted(ResourceType type, int returnCode, long latencyMillis, long bytes, boolean servedFromCache);
+}
@@ -0,0 +1,74 @@
+package com.thoughtworks.go.http.metrics;
+
+import com.thoughtworks.go.http.ResourceType;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * @understands keeping statistics of the requests sent to the Go server, per type of resource
+ */
+public class RequestStatistics implements RequestListener {
+    private final Map<ResourceType, EndpointStatistics> endpoints = new EnumMap<ResourceType, EndpointStatistics>(ResourceType.class);
+
+    public RequestStatistics() {
+        for (ResourceType type : ResourceType.values()) {
+            endpoints.put(type, new EndpointStatistics());
+        }
+    }
+
+    public void requestCompleted(ResourceType type, int returnCode, long latencyMillis, long bytes, boolean servedFromCache) {
+        endpoints.get(type).record(returnCode, latencyMillis, bytes, servedFromCache);
+    }
+
+    /**
+     * Returns the statistics of the requests for the given type of resource.
+     *
+     * @param type the type of resource
+     * @return the statistics
+     */
+    public EndpointStatistics of(ResourceType type) {
+        return endpoints.get(type);
+    }
+
+    /**
+     * Exposes the statistics of every type of resource as an MBean named
+     * "com.thoughtworks.go:type=HttpClientWrapper,name=<i>name</i>,resource=<i>type</i>".
+     *
+     * @param name a name that tells this client apart from others in the same JVM
+     */
+    public void registerMBeans(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ResourceType type : ResourceType.values()) {
+                ObjectName objectName = objectName(name, type);
+                if (!server.isRegistered(objectName)) {
+                    server.registerMBean(endpoints.get(type), objectName);
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Could not register the request statistics with JMX", e);
+        }
+    }
+
+    public void unregisterMBeans(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ResourceType type : ResourceType.values()) {
+                ObjectName objectName = objectName(name, type);
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Could not unregister the request statistics from JMX", e);
+        }
+    }
+
+    private ObjectName objectName(String name, ResourceType type) throws Exception {
+        return new ObjectName(String.format("com.thoughtworks.go:type=HttpClientWrapper,name=%s,resource=%s", ObjectName.quote(name), type.name().toLowerCase()));
+    }
+}
@@ -16,8 +16,7 @@ public class ExampleUsage {
         talkToGo.latestStage("build");
         System.out.println("The latest stage of pair02/build has " + stage.getResult());
         System.out.println(String.format("The latest stage of pair02/build is at counter %s inside pipeline with label %s and counter %s", stage.getCounter(), stage.getPipelineLabel(), stage.getPipelineCounter()));
-        stage.using(wrapper);
-        List<Job> jobs = stage.getJobs();
+        List<Job> jobs = stage.using(wrapper).getJobs();
         System.out.println("jobs = " + jobs);
     }
 }
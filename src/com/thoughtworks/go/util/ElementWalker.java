@@ -0,0 +1,70 @@
+package com.thoughtworks.go.util;
+
+import org.dom4j.Element;
+import org.dom4j.Node;
+
+/**
+ * @understands visiting every element of a document once, in document order
+ *
+ * This is what a factory uses to pick all its fields out of a document in a single pass, instead of running a
+ * descendant XPath query per field that walks the whole document again. An element is started before any of its
+ * children and ended after all of them, so the first element a walker sees with a given name is the one that a query
+ * like "//name" would select first.
+ */
+public abstract class ElementWalker {
+
+    /**
+     * Visits the given element and everything under it.
+     *
+     * @param root the element to start from
+     */
+    public void walk(Element root) {
+        start(root);
+        if (descend(root)) {
+            for (int i = 0, count = root.nodeCount(); i < count; i++) {
+                Node child = root.node(i);
+                if (child instanceof Element) {
+                    walk((Element) child);
+                }
+            }
+        }
+        end(root);
+    }
+
+    /**
+     * Called for an element before any of its children are visited.
+     *
+     * @param element the element
+     */
+    protected abstract void start(Element element);
+
+    /**
+     * Tells whether the children of an element are visited. Called after the element is started. Everything is visited
+     * unless this is overridden.
+     *
+     * @param element the element
+     * @return true to visit the children
+     */
+    protected boolean descend(Element element) {
+        return true;
+    }
+
+    /**
+     * Called for an element after all of its children are visited.
+     *
+     * @param element the element
+     */
+    protected void end(Element element) {
+    }
+
+    /**
+     * Returns the value picked so far, or the text of the element if nothing was picked yet.
+     *
+     * @param picked the value picked so far or null
+     * @param element the element
+     * @return the first value seen
+     */
+    protected static String first(String picked, Element element) {
+        return picked != null ? picked : element.getText();
+    }
+}
@@ -0,0 +1,78 @@
+package com.thoughtworks.go.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @understands holding on to the most recently used values up to a maximum total weight
+ *
+ * By default every value weighs 1, which bounds the number of entries. Override {@link #weigh(Object)} to bound the
+ * cache by some other measure like the size of the values. This class is thread safe.
+ */
+public class LruCache<K, V> {
+    private final long maxWeight;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<K, V>(16, 0.75f, true);
+    private long weight;
+
+    public LruCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the value for the given key and marks it as the most recently used.
+     *
+     * @param key key
+     * @return the value or null if it is not cached
+     */
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Caches the value against the given key, evicting the least recently used values if the cache is too heavy. A value
+     * heavier than the cache itself is not cached.
+     *
+     * @param key key
+     * @param value value
+     */
+    public synchronized void put(K key, V value) {
+        remove(key);
+        long valueWeight = weigh(value);
+        if (valueWeight > maxWeight) {
+            return;
+        }
+        entries.put(key, value);
+        weight += valueWeight;
+        evict();
+    }
+
+    public synchronized V remove(K key) {
+        V value = entries.remove(key);
+        if (value != null) {
+            weight -= weigh(value);
+        }
+        return value;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    protected long weigh(V value) {
+        return 1;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= weigh(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+}
@@ -14,4 +14,245 @@ public class SystemEnvironment {
         String val = System.getenv("API_CLIENT_CACHE_HTTP_RESPONSE");
         return val == null || Boolean.parseBoolean(val);
     }
+
+    /**
+     * How cached responses are laid out in the cache folder: 'files' writes two small files per response, 'segments'
+     * appends them all to a few large files. Defaults to 'files', which takes over a cache folder written by earlier
+     * versions. Switching a cache folder to 'segments' starts it empty.
+     */
+    public static String getCacheStore() {
+        String val = System.getenv("API_CLIENT_CACHE_STORE");
+        return val == null ? "files" : val.trim();
+    }
+
+    /**
+     * The size in bytes beyond which a new cache segment file is started. Defaults to 64MB. Anything above 2GB is treated
+     * as 2GB, as a segment is mapped into memory as a whole.
+     */
+    public static long getCacheSegmentSize() {
+        return longVal("API_CLIENT_CACHE_SEGMENT_SIZE", 64 * 1024 * 1024);
+    }
+
+    /**
+     * Should responses that the server sent gzipped be written to the cache folder as is, instead of decompressed and
+     * compressed again with {@link #getCacheCompression()}. Defaults to false.
+     */
+    public static boolean shouldCacheCompressedResponses() {
+        String val = System.getenv("API_CLIENT_CACHE_COMPRESSED");
+        return val != null && Boolean.parseBoolean(val);
+    }
+
+    /**
+     * How response bodies are compressed in the cache folder: 'gzip', 'deflate' or 'none'. Defaults to 'gzip'.
+     */
+    public static String getCacheCompression() {
+        String val = System.getenv("API_CLIENT_CACHE_COMPRESSION");
+        return val == null ? "gzip" : val.trim();
+    }
+
+    /**
+     * The level from 0 to 9 that response bodies are compressed at in the cache folder. Defaults to 6.
+     */
+    public static int getCacheCompressionLevel() {
+        return intVal("API_CLIENT_CACHE_COMPRESSION_LEVEL", 6);
+    }
+
+    /**
+     * The approximate number of bytes of responses that are cached in memory in front of the cache folder. Defaults to 32MB.
+     */
+    public static long getMemoryCacheSize() {
+        return longVal("API_CLIENT_MEMORY_CACHE_SIZE", 32 * 1024 * 1024);
+    }
+
+    /**
+     * The approximate number of bytes of responses whose parsed stages, jobs and pipelines are held in memory. Defaults
+     * to 16MB.
+     */
+    public static long getParsedCacheSize() {
+        return longVal("API_CLIENT_PARSED_CACHE_SIZE", 16 * 1024 * 1024);
+    }
+
+    /**
+     * Should stages, jobs, pipelines and materials decode their lists, like the jobs of a stage or the changes of a
+     * material, only when they are first asked for. Defaults to false.
+     */
+    public static boolean shouldParseLazily() {
+        String val = System.getenv("API_CLIENT_LAZY_PARSING");
+        return val != null && Boolean.parseBoolean(val);
+    }
+
+    /**
+     * The size in bytes the cache folder is kept under. Defaults to 0, which means no limit.
+     */
+    public static long getCacheMaxSize() {
+        return longVal("API_CLIENT_CACHE_MAX_SIZE", 0);
+    }
+
+    /**
+     * The time in milliseconds after which a cached feed page or other response that can change is evicted. Defaults to
+     * 0, which means never.
+     */
+    public static long getCacheTimeToLive() {
+        return longVal("API_CLIENT_CACHE_TTL", 0);
+    }
+
+    /**
+     * The time in milliseconds after which a cached stage or job that has finished is evicted. Defaults to 0, which
+     * means never.
+     */
+    public static long getCacheImmutableTimeToLive() {
+        return longVal("API_CLIENT_CACHE_IMMUTABLE_TTL", 0);
+    }
+
+    /**
+     * The time in milliseconds between two runs of the background cache eviction. Defaults to 60 seconds.
+     */
+    public static long getCacheEvictionInterval() {
+        return longVal("API_CLIENT_CACHE_EVICTION_INTERVAL", 60 * 1000);
+    }
+
+    /**
+     * The time in milliseconds for which a cached response of the given type of resource is used without asking the Go
+     * server whether it changed, e.g. API_CLIENT_MAX_AGE_FEED for the pages of a stage feed. Defaults to 0, which means
+     * the server is always asked.
+     *
+     * @param resourceType the name of the type of resource
+     */
+    public static long getMaxAge(String resourceType) {
+        return longVal("API_CLIENT_MAX_AGE_" + resourceType.toUpperCase(), 0);
+    }
+
+    /**
+     * The time in milliseconds past its maximum age for which a cached response is still used, while it is revalidated in
+     * the background. Defaults to 0.
+     */
+    public static long getStaleWhileRevalidate() {
+        return longVal("API_CLIENT_STALE_WHILE_REVALIDATE", 0);
+    }
+
+    /**
+     * The time in milliseconds for which a resource that the Go server answered with the given status code is not asked
+     * for again, e.g. API_CLIENT_NEGATIVE_CACHE_TTL_404. Defaults to 10 minutes for 404 and 410, 1 minute for 403, and
+     * 0 for anything else, which means the failure is not remembered.
+     *
+     * @param returnCode the status code
+     */
+    public static long getNegativeCacheTimeToLive(int returnCode) {
+        long defaultValue = returnCode == 404 || returnCode == 410 ? 10 * 60 * 1000 : returnCode == 403 ? 60 * 1000 : 0;
+        return longVal("API_CLIENT_NEGATIVE_CACHE_TTL_" + returnCode, defaultValue);
+    }
+
+    /**
+     * The maximum number of connections that are kept open to the Go server. Defaults to 8.
+     */
+    public static int getMaxConnectionsPerHost() {
+        return intVal("API_CLIENT_MAX_CONNECTIONS_PER_HOST", 8);
+    }
+
+    /**
+     * The maximum number of connections that are kept open across all hosts. Defaults to 32.
+     */
+    public static int getMaxTotalConnections() {
+        return intVal("API_CLIENT_MAX_TOTAL_CONNECTIONS", 32);
+    }
+
+    /**
+     * The time in milliseconds after which a pooled connection that has not been used is closed. Defaults to 30 seconds.
+     */
+    public static long getIdleConnectionTimeout() {
+        return longVal("API_CLIENT_IDLE_CONNECTION_TIMEOUT", 30 * 1000);
+    }
+
+    /**
+     * The maximum number of asynchronous requests that are sent to the Go server at the same time. Requests beyond this
+     * wait in a queue. Defaults to 8.
+     */
+    public static int getMaxRequestsInFlight() {
+        return intVal("API_CLIENT_MAX_REQUESTS_IN_FLIGHT", 8);
+    }
+
+    /**
+     * The maximum number of requests per second sent to the Go server by a client. Defaults to 0 which means no limit.
+     */
+    public static int getMaxRequestsPerSecond() {
+        return intVal("API_CLIENT_MAX_REQUESTS_PER_SECOND", 0);
+    }
+
+    /**
+     * The number of requests that may be sent at once when the client has been idle, in spite of the rate limit.
+     * Defaults to 1.
+     */
+    public static int getRequestBurst() {
+        return intVal("API_CLIENT_REQUEST_BURST", 1);
+    }
+
+    /**
+     * Should the number of concurrent requests be cut down when the Go server is slow or failing. Defaults to false.
+     */
+    public static boolean shouldAdaptConcurrency() {
+        String val = System.getenv("API_CLIENT_ADAPTIVE_CONCURRENCY");
+        return val != null && Boolean.parseBoolean(val);
+    }
+
+    /**
+     * The time in milliseconds beyond which a request is considered slow when adapting concurrency. Defaults to 5 seconds.
+     */
+    public static long getSlowRequestThreshold() {
+        return longVal("API_CLIENT_SLOW_REQUEST_THRESHOLD", 5 * 1000);
+    }
+
+    /**
+     * The time in milliseconds to wait for a connection to the Go server to be established. Defaults to 10 seconds.
+     */
+    public static int getConnectTimeout() {
+        return intVal("API_CLIENT_CONNECT_TIMEOUT", 10 * 1000);
+    }
+
+    /**
+     * The time in milliseconds to wait for the Go server to send data before giving up on a request. Defaults to 60 seconds.
+     */
+    public static int getReadTimeout() {
+        return intVal("API_CLIENT_READ_TIMEOUT", 60 * 1000);
+    }
+
+    /**
+     * The number of times a request that failed temporarily is tried again. Defaults to 2.
+     */
+    public static int getMaxRetries() {
+        return intVal("API_CLIENT_MAX_RETRIES", 2);
+    }
+
+    /**
+     * The time in milliseconds that the wait before the first retry is randomised up to. It doubles for every
+     * subsequent retry. Defaults to 250 milliseconds.
+     */
+    public static long getRetryBackoff() {
+        return longVal("API_CLIENT_RETRY_BACKOFF", 250);
+    }
+
+    /**
+     * Should a second request be sent for a stage, job or pipeline instance when the first one takes longer than 95% of
+     * the recent requests. Whichever answers first is used. Defaults to false.
+     */
+    public static boolean shouldHedgeRequests() {
+        String val = System.getenv("API_CLIENT_HEDGE_REQUESTS");
+        return val != null && Boolean.parseBoolean(val);
+    }
+
+    /**
+     * Should the statistics of the requests sent to the Go server be exposed as MBeans over JMX. Defaults to false.
+     */
+    public static boolean shouldExposeStatistics() {
+        String val = System.getenv("API_CLIENT_JMX_STATISTICS");
+        return val != null && Boolean.parseBoolean(val);
+    }
+
+    private static int intVal(String name, int defaultValue) {
+        return (int) longVal(name, defaultValue);
+    }
+
+    private static long longVal(String name, long defaultValue) {
+        String val = System.getenv(name);
+        return val == null ? defaultValue : Long.parseLong(val.trim());
+    }
 }
@@ -3,6 +3,7 @@ package com.thoughtworks.go.util;
 import org.dom4j.*;
 import org.dom4j.io.SAXReader;
 
+import java.io.InputStream;
 import java.io.StringReader;
 import java.util.HashMap;
 import java.util.List;
@@ -10,8 +11,35 @@ import java.util.Map;
 
 /**
  * @understands some common API used to deal with XML
+ *
+ * Everything here can be used from several threads at once. Every thread parses with its own reader, and the documents
+ * come from a factory of their own that knows the "a" namespace, so the shared dom4j factory is never touched. XPath
+ * expressions are compiled once per thread and kept by their text.
  */
 public class XmlUtil {
+    private static final DocumentFactory FACTORY = documentFactory();
+
+    private static final ThreadLocal<SAXReader> READERS = new ThreadLocal<SAXReader>() {
+        @Override
+        protected SAXReader initialValue() {
+            return new SAXReader(FACTORY);
+        }
+    };
+
+    private static final ThreadLocal<Map<String, XPath>> XPATHS = new ThreadLocal<Map<String, XPath>>() {
+        @Override
+        protected Map<String, XPath> initialValue() {
+            return new HashMap<String, XPath>();
+        }
+    };
+
+    private static DocumentFactory documentFactory() {
+        Map<String, String> namespaces = new HashMap<String, String>();
+        namespaces.put("a", "http://www.w3.org/2005/Atom");
+        DocumentFactory factory = new DocumentFactory();
+        factory.setXPathNamespaceURIs(namespaces);
+        return factory;
+    }
 
     /**
      * Parse the given string which is an XML. The default namespace registered is "a". Hence all XPaths need to use this as their namespace.
@@ -20,18 +48,34 @@ public class XmlUtil {
      */
     public static Document parse(String xml) {
         try {
-            registerNameSpace();
-            SAXReader reader = new SAXReader();
-            return reader.read(new StringReader(xml));
+            return READERS.get().read(new StringReader(xml));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    private static void registerNameSpace() {
-        Map<String, String> namespaces = new HashMap<String, String>();
-        namespaces.put("a", "http://www.w3.org/2005/Atom");
-        DocumentFactory.getInstance().setXPathNamespaceURIs(namespaces);
+    /**
+     * Parse the XML read from the given stream as it arrives. The encoding is picked from the XML declaration. The default
+     * namespace registered is "a".
+     * @param xml stream of xml
+     * @return the Document object representing this XML
+     */
+    public static Document parse(InputStream xml) {
+        try {
+            return READERS.get().read(xml);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static XPath xpath(String xpath) {
+        Map<String, XPath> compiled = XPATHS.get();
+        XPath expression = compiled.get(xpath);
+        if (expression == null) {
+            expression = FACTORY.createXPath(xpath);
+            compiled.put(xpath, expression);
+        }
+        return expression;
     }
 
     /**
@@ -72,7 +116,18 @@ public class XmlUtil {
      * @return the first match that matches this xpath
      */
     public static Element singleNode(Document doc, String xpath) {
-        return (Element) doc.selectSingleNode(xpath);
+        return (Element) xpath(xpath).selectSingleNode(doc);
+    }
+
+    /**
+     * Returns the first element under the given element that matches this xpath.
+     *
+     * @param element element
+     * @param xpath xpath with the right namespaces.
+     * @return the first match that matches this xpath
+     */
+    public static Element singleNode(Element element, String xpath) {
+        return (Element) xpath(xpath).selectSingleNode(element);
     }
 
     /**
@@ -84,7 +139,7 @@ public class XmlUtil {
      */
     @SuppressWarnings({"unchecked"})
     public static List<Element> nodes(Document doc, String xpath) {
-        return doc.selectNodes(xpath);
+        return xpath(xpath).selectNodes(doc);
     }
 
     /**
@@ -96,7 +151,7 @@ public class XmlUtil {
      */
     @SuppressWarnings({"unchecked"})
     public static List<Element> nodes(Element element, String xpath) {
-        return element.selectNodes(xpath);
+        return xpath(xpath).selectNodes(element);
     }
 
     /**
@@ -116,7 +171,7 @@ public class XmlUtil {
      * @return the text node of the matched element
      */
     public static String nodeText(Element element, String xpath) {
-        Node node = element.selectSingleNode(xpath);
+        Node node = xpath(xpath).selectSingleNode(element);
         return node == null ? null : node.getText();
     }
 }
@@ -6,6 +6,9 @@ import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.nullValue;
 import org.apache.commons.io.FileUtils;
 
+import com.thoughtworks.go.util.XmlUtil;
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.File;
 import java.util.ArrayList;
@@ -41,6 +44,22 @@ public class FeedEntriesTest {
                 "Failed");
     }
 
+    @Test
+    public void shouldReadTheSameEntriesFromAStreamAsFromADocument() throws Exception {
+        String feed = file("testdata/2.4/feed.xml");
+        FeedEntries fromDocument = FeedEntries.create(XmlUtil.parse(feed));
+        FeedEntries fromStream = FeedEntries.create(new ByteArrayInputStream(feed.getBytes("UTF-8")));
+
+        assertThat(fromStream.getEntries(), is(fromDocument.getEntries()));
+        assertThat(fromStream.getNextLink(), is(fromDocument.getNextLink()));
+    }
+
+    @Test
+    public void shouldNotHaveANextLinkOnTheLastPage() throws Exception {
+        String feed = file("testdata/2.4/feed.xml").replaceAll("<link rel=\"next\"[^>]*>", "");
+        assertThat(FeedEntries.create(feed).getNextLink(), is(nullValue()));
+    }
+
     private void assertFeedEntry(FeedEntry feedEntry, String title, String updatedDate, String id, String resourceLink, String authors, List<String> cardAndLinks, String state, String result) {
         assertThat(feedEntry.getTitle(), is(title));
         assertThat(feedEntry.getUpdatedDate(), is(updatedDate));
@@ -0,0 +1,31 @@
+package com.thoughtworks.go.domain;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringReader;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class FeedReaderTest {
+
+    @Test
+    public void shouldReadAnEntryBeforeTheRestOfTheFeedHasArrived() throws Exception {
+        String feed = FileUtils.readFileToString(new File("testdata/2.4/feed.xml"));
+        String firstEntryOnly = feed.substring(0, feed.indexOf("</entry>") + "</entry>".length() + 1);
+        FeedReader reader = new FeedReader(new StringReader(firstEntryOnly));
+
+        assertThat(reader.getNextLink(), is((String) null));
+        assertThat(reader.hasNext(), is(true));
+        assertThat(reader.next().getResourceLink(), is("http://go03.thoughtworks.com:8153/go/api/stages/9.xml"));
+        assertThat(reader.getNextLink(), is("http://go03.thoughtworks.com:8153/go/api/pipelines/pair03/stages.xml?before=8"));
+        try {
+            reader.hasNext();
+            fail("The rest of the feed never arrived");
+        } catch (RuntimeException expected) {
+        }
+    }
+}
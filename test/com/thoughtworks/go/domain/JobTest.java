@@ -12,6 +12,7 @@ import java.util.List;
 import java.util.Date;
 
 import com.thoughtworks.go.domain.Job;
+import com.thoughtworks.go.util.XmlUtil;
 
 public class JobTest {
 
@@ -33,6 +34,16 @@ public class JobTest {
         assertVariables(job);
     }
 
+    @Test
+    public void shouldDecodeTheSameJobLazily() throws Exception {
+        Job job = Job.create(XmlUtil.parse(file("testdata/2.4/job-2.xml")), true);
+        assertThat(job.getName(), is("two"));
+        assertProperties(job);
+        assertResources(job);
+        assertVariables(job);
+        assertThat(job, is(Job.create(XmlUtil.parse(file("testdata/2.4/job-2.xml")), false)));
+    }
+
     @Test
     public void shouldHaveTheTimeTheJobSpentOnAnAgent() throws Exception {
         Job job = Job.create(file("testdata/2.4/job-with-properties.xml"));
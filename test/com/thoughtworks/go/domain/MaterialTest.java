@@ -10,6 +10,9 @@ import java.io.File;
 import java.util.List;
 
 import com.thoughtworks.go.domain.Material;
+import com.thoughtworks.go.util.XmlUtil;
+import org.dom4j.Document;
+import org.dom4j.Element;
 
 public class MaterialTest {
 
@@ -48,6 +51,19 @@ public class MaterialTest {
         assertThat(changes.get(0), is(new Material.Change(null, "2010-07-07T16:21:41+05:30", "application/54/dev/1", null)));
     }
 
+    @Test
+    public void shouldBuildTheSameMaterialsWithinAPipelineAsOnTheirOwn() throws Exception {
+        Document pipeline = XmlUtil.parse(file("testdata/2.4/pipeline-9.xml"));
+        List<Element> elements = XmlUtil.nodes(pipeline, "//material");
+        List<Material> materials = Pipeline.create(pipeline).getMaterials();
+
+        assertThat(materials.size(), is(elements.size()));
+        for (int i = 0; i < elements.size(); i++) {
+            assertThat(Material.create(elements.get(i)), is(Material.create(elements.get(i).asXML())));
+            assertThat(materials.get(i), is(Material.create(elements.get(i).asXML())));
+        }
+    }
+
     private String file(String name) throws IOException {
         return FileUtils.readFileToString(new File(name));
     }
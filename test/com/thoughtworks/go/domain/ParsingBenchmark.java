@@ -0,0 +1,76 @@
+package com.thoughtworks.go.domain;
+
+import com.thoughtworks.go.util.XmlUtil;
+import org.apache.commons.io.FileUtils;
+import org.dom4j.Document;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * @understands how much CPU and memory it takes to build stages, jobs, pipelines and materials from their documents
+ *
+ * Run it with the test classpath. Documents are parsed once up front, so only the factories are measured. Allocation is
+ * only reported on JVMs that can count the bytes a thread allocates.
+ */
+public class ParsingBenchmark {
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        final Document stage = document("testdata/2.4/stage-9.xml");
+        final Document job = document("testdata/2.4/job-with-properties.xml");
+        final Document pipeline = document("testdata/2.4/pipeline-9.xml");
+        final String material = FileUtils.readFileToString(new File("testdata/2.4/hg-material.xml"));
+
+        measure("Stage", new Runnable() {
+            public void run() {
+                Stage.create(stage);
+            }
+        });
+        measure("Job", new Runnable() {
+            public void run() {
+                Job.create(job);
+            }
+        });
+        measure("Pipeline", new Runnable() {
+            public void run() {
+                Pipeline.create(pipeline);
+            }
+        });
+        measure("Material", new Runnable() {
+            public void run() {
+                Material.create(material);
+            }
+        });
+    }
+
+    private static Document document(String name) throws IOException {
+        return XmlUtil.parse(FileUtils.readFileToString(new File(name)));
+    }
+
+    private static void measure(String name, Runnable factory) {
+        for (int i = 0; i < WARMUP; i++) {
+            factory.run();
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocatedBefore = allocatedBytes(threads);
+        long cpuBefore = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            factory.run();
+        }
+        long cpu = threads.getCurrentThreadCpuTime() - cpuBefore;
+        long allocated = allocatedBytes(threads) - allocatedBefore;
+        System.out.println(String.format("%-10s %8.1f us/doc %10s bytes/doc", name, cpu / 1000.0 / ITERATIONS,
+                allocatedBefore < 0 ? "n/a" : String.valueOf(allocated / ITERATIONS)));
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -13,6 +13,7 @@ import java.io.File;
 import java.util.Arrays;
 
 import com.thoughtworks.go.domain.Pipeline;
+import com.thoughtworks.go.util.XmlUtil;
 
 public class PipelineTest {
 
@@ -27,11 +28,20 @@ public class PipelineTest {
         HttpClientWrapper wrapper = mock(HttpClientWrapper.class);
         Pipeline pipeline = Pipeline.create(file("testdata/2.4/pipeline-9.xml")).using(wrapper);
 
-        when(wrapper.get("/api/stages/14138.xml")).thenReturn(file("testdata/2.4/stage-9.xml"));
+        when(wrapper.getAll(Arrays.asList("/api/stages/14138.xml"), Stage.PARSER)).thenReturn(Arrays.asList(Stage.create(file("testdata/2.4/stage-9.xml"))));
 
         assertThat(pipeline.getStages(), is(Arrays.asList(Stage.create(file("testdata/2.4/stage-9.xml")))));
     }
 
+    @Test
+    public void shouldDecodeTheSamePipelineLazily() throws Exception {
+        Pipeline lazy = Pipeline.create(XmlUtil.parse(file("testdata/2.4/pipeline-9.xml")), true);
+        Pipeline eager = Pipeline.create(XmlUtil.parse(file("testdata/2.4/pipeline-9.xml")), false);
+        assertThat(lazy.getMaterials(), is(eager.getMaterials()));
+        assertThat(lazy.getMaterials().get(0).getChanges(), is(eager.getMaterials().get(0).getChanges()));
+        assertThat(lazy, is(eager));
+    }
+
     private String file(String name) throws IOException {
         return FileUtils.readFileToString(new File(name));
     }
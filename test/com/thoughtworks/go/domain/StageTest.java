@@ -3,12 +3,16 @@ package com.thoughtworks.go.domain;
 import org.junit.Test;
 import static org.junit.Assert.assertThat;
 import org.apache.commons.io.FileUtils;
+import org.dom4j.Document;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.io.File;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.TimeZone;
@@ -16,6 +20,7 @@ import java.util.TimeZone;
 import static junit.framework.Assert.fail;
 
 import com.thoughtworks.go.http.HttpClientWrapper;
+import com.thoughtworks.go.util.XmlUtil;
 
 public class StageTest {
 
@@ -48,23 +53,70 @@ public class StageTest {
         }
     }
 
+    @Test
+    public void shouldBindACopyToTheClientAndLeaveTheStageAsItIs() throws Exception {
+        Stage stage = Stage.create(file("testdata/2.4/stage-9.xml"));
+        HttpClientWrapper wrapper = mock(HttpClientWrapper.class);
+        when(wrapper.getAll(Arrays.asList("/api/jobs/1.xml", "/api/jobs/2.xml"), Job.PARSER)).thenReturn(Arrays.asList(Job.create(file("testdata/2.4/job-1.xml"))));
+
+        Stage bound = stage.using(wrapper);
+
+        assertThat(bound, is(not(sameInstance(stage))));
+        assertThat(bound, is(stage));
+        assertThat(bound.getJobs().size(), is(1));
+        try {
+            stage.getJobs();
+            fail("The shared stage should not have been bound");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
     @Test
     public void shouldLazilyLoadJobs() throws Exception {
         Stage stage = Stage.create(file("testdata/2.4/stage-9.xml"));
         HttpClientWrapper wrapper = mock(HttpClientWrapper.class);
-        when(wrapper.get("/api/jobs/1.xml")).thenReturn(file("testdata/2.4/job-1.xml"));
-        when(wrapper.get("/api/jobs/2.xml")).thenReturn(file("testdata/2.4/job-2.xml"));
+        when(wrapper.getAll(Arrays.asList("/api/jobs/1.xml", "/api/jobs/2.xml"), Job.PARSER)).thenReturn(Arrays.asList(Job.create(file("testdata/2.4/job-1.xml")), Job.create(file("testdata/2.4/job-2.xml"))));
         List<Job> jobs = stage.using(wrapper).getJobs();
         assertThat(jobs.size(), is(2));
         assertThat(jobs.get(0), is(Job.create(file("testdata/2.4/job-1.xml"))));
         assertThat(jobs.get(1), is(Job.create(file("testdata/2.4/job-2.xml"))));
     }
 
+    @Test
+    public void shouldDecodeTheSameStageLazily() throws Exception {
+        Stage lazy = Stage.create(XmlUtil.parse(file("testdata/2.4/stage-9.xml")), true);
+        Stage eager = Stage.create(XmlUtil.parse(file("testdata/2.4/stage-9.xml")), false);
+        HttpClientWrapper wrapper = mock(HttpClientWrapper.class);
+        when(wrapper.getAll(Arrays.asList("/api/jobs/1.xml", "/api/jobs/2.xml"), Job.PARSER)).thenReturn(Arrays.asList(Job.create(file("testdata/2.4/job-1.xml")), Job.create(file("testdata/2.4/job-2.xml"))));
+        assertThat(lazy, is(eager));
+        assertThat(lazy.using(wrapper).getJobs(), is(eager.using(wrapper).getJobs()));
+    }
+
+    @Test
+    public void shouldKeepTheJobsOfALazyStageWithoutHoldingOnToTheDocument() throws Exception {
+        Document doc = XmlUtil.parse(file("testdata/2.4/stage-9.xml"));
+        Stage lazy = Stage.create(doc, true);
+        doc.getRootElement().element("jobs").clearContent();
+        HttpClientWrapper wrapper = mock(HttpClientWrapper.class);
+        when(wrapper.getAll(Arrays.asList("/api/jobs/1.xml", "/api/jobs/2.xml"), Job.PARSER)).thenReturn(Arrays.asList(Job.create(file("testdata/2.4/job-1.xml")), Job.create(file("testdata/2.4/job-2.xml"))));
+        assertThat(lazy.using(wrapper).getJobs().size(), is(2));
+    }
+
+    @Test
+    public void shouldCompareStagesByWhatIdentifiesThemRatherThanByTheirJobs() throws Exception {
+        Document withoutJobs = XmlUtil.parse(file("testdata/2.4/stage-9.xml"));
+        withoutJobs.getRootElement().element("jobs").clearContent();
+        Stage lazy = Stage.create(XmlUtil.parse(file("testdata/2.4/stage-9.xml")), true);
+        Stage eager = Stage.create(withoutJobs, false);
+        assertThat(lazy, is(eager));
+        assertThat(lazy.hashCode(), is(eager.hashCode()));
+    }
+
     @Test
     public void shouldLazilyLoadPipeline() throws Exception {
         Stage stage = Stage.create(file("testdata/2.4/stage-9.xml"));
         HttpClientWrapper wrapper = mock(HttpClientWrapper.class);
-        when(wrapper.get("/api/pipelines/pipeline/9.xml")).thenReturn(file("testdata/2.4/pipeline-9.xml"));
+        when(wrapper.get("/api/pipelines/pipeline/9.xml", Pipeline.PARSER)).thenReturn(Pipeline.create(file("testdata/2.4/pipeline-9.xml")));
         Pipeline pipeline = stage.using(wrapper).getPipeline();
         assertThat(pipeline.getApprovedBy(), is("CruiseTimer"));
     }
@@ -0,0 +1,58 @@
+package com.thoughtworks.go.http;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    @Test
+    public void shouldHalveTheLimitWhenRequestsFail() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1000);
+        limit.acquire();
+        limit.release(10, true);
+        assertThat(limit.getLimit(), is(4));
+        limit.acquire();
+        limit.release(10, true);
+        assertThat(limit.getLimit(), is(2));
+    }
+
+    @Test
+    public void shouldNotBackOffForASingleSlowRequest() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1000);
+        complete(limit, 19, 10);
+        complete(limit, 1, 5000);
+        assertThat(limit.getLimit(), is(8));
+    }
+
+    @Test
+    public void shouldHalveTheLimitOncePerWindowWhileRequestsAreSlow() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1000);
+        complete(limit, 18, 10);
+        complete(limit, 2, 5000);
+        assertThat(limit.getLimit(), is(4));
+        complete(limit, 19, 5000);
+        assertThat(limit.getLimit(), is(4));
+        complete(limit, 1, 5000);
+        assertThat(limit.getLimit(), is(2));
+    }
+
+    @Test
+    public void shouldGrowTheLimitBackWhenRequestsSucceed() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1000);
+        limit.acquire();
+        limit.release(10, true);
+        complete(limit, 5, 10);
+        assertThat(limit.getLimit(), is(5));
+        complete(limit, 100, 10);
+        assertThat(limit.getLimit(), is(8));
+    }
+
+    private void complete(AdaptiveConcurrencyLimit limit, int requests, long latencyMillis) {
+        for (int i = 0; i < requests; i++) {
+            limit.acquire();
+            limit.release(latencyMillis, false);
+        }
+    }
+}
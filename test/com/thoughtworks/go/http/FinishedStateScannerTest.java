@@ -0,0 +1,46 @@
+package com.thoughtworks.go.http;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FinishedStateScannerTest {
+
+    @Test
+    public void shouldTellAFinishedStageFromItsBodyAsItIsRead() throws Exception {
+        assertThat(scan("<stage><state>Passed</state></stage>", ResourceType.STAGE, 1024), is(true));
+        assertThat(scan("<stage><state>Building</state></stage>", ResourceType.STAGE, 1024), is(false));
+        assertThat(scan("<pipeline><state>Passed</state></pipeline>", ResourceType.PIPELINE, 1024), is(false));
+    }
+
+    @Test
+    public void shouldFindAStateThatIsSplitAcrossReads() throws Exception {
+        StringBuilder job = new StringBuilder("<job>");
+        for (int i = 0; i < 1000; i++) {
+            job.append("<property name='").append(i).append("'/>");
+        }
+        job.append("<state>Completed</state></job>");
+        assertThat(scan(job.toString(), ResourceType.JOB, 1), is(true));
+        assertThat(scan(job.toString(), ResourceType.JOB, 7), is(true));
+        assertThat(scan(job.toString(), ResourceType.JOB, 4096), is(true));
+    }
+
+    private boolean scan(String body, ResourceType type, final int readSize) throws IOException {
+        InputStream trickling = new ByteArrayInputStream(body.getBytes("UTF-8")) {
+            @Override
+            public synchronized int read(byte[] bytes, int offset, int length) {
+                return super.read(bytes, offset, Math.min(length, readSize));
+            }
+        };
+        FinishedStateScanner scanner = new FinishedStateScanner(trickling, type);
+        IOUtils.copy(scanner, new NullOutputStream());
+        return scanner.isFinished();
+    }
+}
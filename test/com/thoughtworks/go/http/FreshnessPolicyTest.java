@@ -0,0 +1,40 @@
+package com.thoughtworks.go.http;
+
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FreshnessPolicyTest {
+
+    @Test
+    public void shouldKeepEachTypeOfResourceFreshForItsOwnMaximumAge() throws Exception {
+        Map<ResourceType, Long> maxAges = new EnumMap<ResourceType, Long>(ResourceType.class);
+        maxAges.put(ResourceType.FEED, 5000L);
+        FreshnessPolicy policy = new FreshnessPolicy(maxAges, 0);
+
+        assertThat(policy.isFresh(ResourceType.FEED, 0), is(true));
+        assertThat(policy.isFresh(ResourceType.FEED, 4999), is(true));
+        assertThat(policy.isFresh(ResourceType.FEED, 5000), is(false));
+        assertThat(policy.isFresh(ResourceType.FEED, -1), is(false));
+        assertThat(policy.isFresh(ResourceType.STAGE, 0), is(false));
+        assertThat(policy.canServeStale(ResourceType.FEED, 5000), is(false));
+    }
+
+    @Test
+    public void shouldServeAResponseStaleOnlyWithinTheWindowPastItsMaximumAge() throws Exception {
+        Map<ResourceType, Long> maxAges = new EnumMap<ResourceType, Long>(ResourceType.class);
+        maxAges.put(ResourceType.FEED, 5000L);
+        FreshnessPolicy policy = new FreshnessPolicy(maxAges, 1000);
+
+        assertThat(policy.canServeStale(ResourceType.FEED, 4999), is(false));
+        assertThat(policy.canServeStale(ResourceType.FEED, 5000), is(true));
+        assertThat(policy.canServeStale(ResourceType.FEED, 5999), is(true));
+        assertThat(policy.canServeStale(ResourceType.FEED, 6000), is(false));
+        assertThat(policy.canServeStale(ResourceType.STAGE, 999), is(true));
+        assertThat(policy.canServeStale(ResourceType.STAGE, -1), is(false));
+    }
+}
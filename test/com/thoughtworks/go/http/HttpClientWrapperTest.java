@@ -3,23 +3,47 @@ package com.thoughtworks.go.http;
 import org.junit.Test;
 import org.junit.Before;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsSame.sameInstance;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.net.SocketTimeoutException;
 import java.io.InputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
+import com.thoughtworks.go.http.metrics.EndpointStatistics;
 import com.thoughtworks.go.util.SystemEnvironment;
+import com.thoughtworks.go.util.XmlUtil;
 
 public class HttpClientWrapperTest {
 
@@ -60,6 +84,25 @@ public class HttpClientWrapperTest {
         assertThat(response, is("some response"));
     }
 
+    @Test
+    public void testShouldKeepStatisticsOfTheRequestsSent() {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethodThatReturnsValueOnlyOnce());
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        wrapper.setClient(new MockHttpClient());
+
+        wrapper.get("/api/stages/1.xml");
+        wrapper.get("/api/stages/1.xml");
+
+        EndpointStatistics stages = wrapper.getStatistics().of(ResourceType.STAGE);
+        assertThat(stages.getRequests(), is(2L));
+        assertThat(stages.getOk(), is(1L));
+        assertThat(stages.getNotModified(), is(1L));
+        assertThat(stages.getBytesTransferred(), is((long) "some response".length()));
+        assertThat(stages.getCacheHitRatio(), is(0.5));
+    }
+
     @Test
     public void testShouldOverwriteTheCacheWhenTheServerReturnsA200() {
         HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
@@ -74,13 +117,493 @@ public class HttpClientWrapperTest {
         assertThat(response, is("other time"));
     }
 
+    @Test
+    public void testShouldPoolConnectionsToTheServer() {
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153);
+        try {
+            HttpConnectionManager manager = wrapper.httpClient().getHttpConnectionManager();
+            assertThat(manager, is(instanceOf(MultiThreadedHttpConnectionManager.class)));
+            assertThat(manager.getParams().getDefaultMaxConnectionsPerHost(), is(SystemEnvironment.getMaxConnectionsPerHost()));
+            assertThat(manager.getParams().getMaxTotalConnections(), is(SystemEnvironment.getMaxTotalConnections()));
+        } finally {
+            wrapper.shutdown();
+        }
+    }
+
+    @Test
+    public void testShouldTimeOutConnectingAndReading() {
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153);
+        try {
+            HttpConnectionManager manager = wrapper.httpClient().getHttpConnectionManager();
+            assertThat(manager.getParams().getConnectionTimeout(), is(SystemEnvironment.getConnectTimeout()));
+            assertThat(manager.getParams().getSoTimeout(), is(SystemEnvironment.getReadTimeout()));
+        } finally {
+            wrapper.shutdown();
+        }
+    }
+
+    @Test
+    public void testShouldFetchAResourceAsynchronously() throws Exception {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethod());
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        wrapper.setClient(new MockHttpClientThatKeepsModifying());
+
+        assertThat(wrapper.getAsync("/go/api/stages").get(), is("first time"));
+    }
+
+    @Test
+    public void testShouldFetchAllResourcesConcurrentlyInOrder() throws Exception {
+        int count = SystemEnvironment.getMaxRequestsInFlight() * 2;
+        List<String> paths = new ArrayList<String>();
+        List<String> requested = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            paths.add("/api/stages/" + i + ".xml");
+            requested.add("/go/api/stages/" + i + ".xml");
+        }
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, new HttpMethodFactory() {
+            @Override
+            public HttpMethod create(String method) {
+                return new MockGetMethodThatAnswersWithItsPath();
+            }
+        });
+        OutOfOrderHttpClient outOfOrderHttpClient = new OutOfOrderHttpClient(count);
+        wrapper.setClient(outOfOrderHttpClient);
+
+        assertThat(wrapper.getAll(paths), is(requested));
+        assertThat(outOfOrderHttpClient.answered.size(), is(count));
+        assertThat(outOfOrderHttpClient.answered.equals(requested), is(false));
+        assertTrue(outOfOrderHttpClient.mostOutstanding.get() > 1);
+        assertTrue(outOfOrderHttpClient.mostOutstanding.get() <= SystemEnvironment.getMaxRequestsInFlight());
+    }
+
+    /**
+     * Answers the requests that were asked for first last, and remembers how many were outstanding at once.
+     */
+    private static class OutOfOrderHttpClient extends HttpClient {
+        final int count;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicInteger mostOutstanding = new AtomicInteger();
+        final List<String> answered = Collections.synchronizedList(new ArrayList<String>());
+
+        private OutOfOrderHttpClient(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public int executeMethod(HttpMethod httpMethod) throws IOException {
+            int now = outstanding.incrementAndGet();
+            int most = mostOutstanding.get();
+            while (now > most && !mostOutstanding.compareAndSet(most, now)) {
+                most = mostOutstanding.get();
+            }
+            try {
+                String path = httpMethod.getPath();
+                Thread.sleep((count - Integer.parseInt(path.replaceAll("\\D", ""))) * 10);
+                answered.add(path);
+                return 200;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                outstanding.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void testShouldShareTheResponseOfARequestThatIsAlreadyInFlight() throws Exception {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethod());
+
+        final HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        BlockingHttpClient blockingHttpClient = new BlockingHttpClient();
+        wrapper.setClient(blockingHttpClient);
+
+        Future<String> first = wrapper.getAsync("/go/api/stages");
+        blockingHttpClient.requestSent.await();
+        final String[] second = new String[1];
+        Thread secondCaller = new Thread() {
+            public void run() {
+                second[0] = wrapper.get("/go/api/stages");
+            }
+        };
+        secondCaller.start();
+        while (secondCaller.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        blockingHttpClient.respond.countDown();
+        secondCaller.join();
+
+        assertThat(first.get(), is("first time"));
+        assertThat(second[0], is("first time"));
+        assertThat(blockingHttpClient.requests.get(), is(1));
+    }
+
+    @Test
+    public void testShouldStreamTheResponseToTheHandlerWhileCachingIt() {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethod());
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        wrapper.setClient(new MockHttpClient());
+        ResponseHandler<String> handler = new ResponseHandler<String>() {
+            public String handle(InputStream response) throws IOException {
+                return IOUtils.toString(response);
+            }
+        };
+
+        assertThat(wrapper.handle("/go/api/stages", null, handler), is("first time"));
+        assertThat(wrapper.handle("/go/api/stages", null, handler), is("first time"));
+        assertThat(wrapper.get("/go/api/stages"), is("first time"));
+    }
+
+    @Test
+    public void testShouldNotParseAResponseThatHasNotChangedAgain() {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethodThatReturnsValueOnlyOnce());
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        wrapper.setClient(new MockHttpClient());
+        final AtomicInteger parsed = new AtomicInteger();
+        ResponseParser<StringBuilder> parser = new ResponseParser<StringBuilder>() {
+            public StringBuilder parse(String response) {
+                parsed.incrementAndGet();
+                return new StringBuilder(response);
+            }
+        };
+
+        StringBuilder first = wrapper.get("/go/api/stages", parser);
+        assertThat(first.toString(), is("some response"));
+        assertThat(wrapper.get("/go/api/stages", parser), is(sameInstance(first)));
+        assertThat(wrapper.getAll(Arrays.asList("/go/api/stages"), parser).get(0), is(sameInstance(first)));
+        assertThat(parsed.get(), is(1));
+    }
+
+    @Test
+    public void testShouldHandAStreamingParserTheBodyAsItArrives() {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethodWithBody("<stage><state>Passed</state></stage>"));
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        MockHttpClient mockHttpClient = new MockHttpClient();
+        wrapper.setClient(mockHttpClient);
+        StreamingResponseParser<String> parser = new StreamingResponseParser<String>() {
+            public String parse(String response) {
+                throw new RuntimeException("Should have been handed the stream instead");
+            }
+
+            public String handle(InputStream response) throws IOException {
+                return IOUtils.toString(response).toUpperCase();
+            }
+        };
+
+        assertThat(wrapper.get("/go/api/stages/1.xml", parser), is("<STAGE><STATE>PASSED</STATE></STAGE>"));
+        assertThat(wrapper.get("/go/api/stages/1.xml"), is("<stage><state>Passed</state></stage>"));
+        assertThat(mockHttpClient.requests.get(), is(1));
+
+        HttpClientWrapper restarted = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        restarted.setClient(mockHttpClient);
+        assertThat(restarted.get("/go/api/stages/1.xml", parser), is("<STAGE><STATE>PASSED</STATE></STAGE>"));
+        assertThat(mockHttpClient.requests.get(), is(1));
+    }
+
+    @Test
+    public void testShouldParseAResponseThatChangedAgain() {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethod());
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        wrapper.setClient(new MockHttpClientThatKeepsModifying());
+        ResponseParser<String> parser = new ResponseParser<String>() {
+            public String parse(String response) {
+                return response.toUpperCase();
+            }
+        };
+
+        assertThat(wrapper.get("/go/api/stages", parser), is("FIRST TIME"));
+        assertThat(wrapper.get("/go/api/stages", parser), is("OTHER TIME"));
+    }
+
+    @Test
+    public void testShouldNotAskTheServerAgainForAResponseThatIsStillFresh() {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethodThatReturnsValueOnlyOnce());
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        MockHttpClient mockHttpClient = new MockHttpClient();
+        wrapper.setClient(mockHttpClient);
+        wrapper.setFreshness(new FreshnessPolicy(Collections.singletonMap(ResourceType.FEED, 60 * 1000L), 0));
+
+        assertThat(wrapper.get("/go/api/pipelines/pipeline/stages.xml"), is("some response"));
+        assertThat(wrapper.get("/go/api/pipelines/pipeline/stages.xml"), is("some response"));
+        assertThat(mockHttpClient.requests.get(), is(1));
+
+        wrapper.get("/go/api/stages/1.xml");
+        wrapper.get("/go/api/stages/1.xml");
+        assertThat(mockHttpClient.requests.get(), is(3));
+    }
+
+    @Test
+    public void testShouldServeAStaleResponseWhileRevalidatingItInTheBackground() throws Exception {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethodThatReturnsValueOnlyOnce());
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        MockHttpClient mockHttpClient = new MockHttpClient();
+        wrapper.setClient(mockHttpClient);
+        wrapper.setFreshness(new FreshnessPolicy(Collections.<ResourceType, Long>emptyMap(), 60 * 1000L));
+
+        assertThat(wrapper.get("/go/api/pipelines/pipeline/stages.xml"), is("some response"));
+        assertThat(wrapper.get("/go/api/pipelines/pipeline/stages.xml"), is("some response"));
+        for (int i = 0; i < 100 && mockHttpClient.requests.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(mockHttpClient.requests.get(), is(2));
+        assertThat(mockHttpClient.requestEtag.getValue(), is("123"));
+    }
+
+    @Test
+    public void testShouldNotAskAgainForAResourceThatWasMissing() {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethod());
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        MissingHttpClient missingHttpClient = new MissingHttpClient();
+        wrapper.setClient(missingHttpClient);
+        wrapper.setNegativeCache(new NegativeCache(Collections.singletonMap(404, 60 * 1000L)));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                wrapper.get("/go/api/stages/1.xml");
+                fail("The stage is missing");
+            } catch (RuntimeException expected) {
+                assertThat(expected.getMessage().contains("[404]"), is(true));
+            }
+        }
+        assertThat(missingHttpClient.requests.get(), is(1));
+        assertThat(wrapper.getStatistics().of(ResourceType.STAGE).getErrors(), is(2L));
+        assertThat(wrapper.getStatistics().of(ResourceType.STAGE).getCacheHitRatio(), is(0.0));
+    }
+
+    @Test
+    public void testShouldDecodeTheStartOfACompressedErrorIntoTheFailure() throws Exception {
+        StringBuilder error = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            error.append("not found ");
+        }
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGzipGetMethod(error.toString()));
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        wrapper.setClient(new MissingHttpClient());
+
+        try {
+            wrapper.get("/go/api/stages/1.xml");
+            fail("The stage is missing");
+        } catch (RuntimeException expected) {
+            assertThat(expected.getMessage().contains("Response [not found not found "), is(true));
+            assertThat(expected.getMessage().contains("...] was returned with code [404]"), is(true));
+            assertTrue(expected.getMessage().length() < 2000);
+        }
+    }
+
+    @Test
+    public void testShouldAskForAndDecodeCompressedResponses() throws Exception {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        MockGzipGetMethod gzipGetMethod = new MockGzipGetMethod("compressed response");
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(gzipGetMethod);
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        wrapper.setClient(new MockHttpClient());
+
+        assertThat(wrapper.get("/go/api/stages"), is("compressed response"));
+        assertThat(gzipGetMethod.getRequestHeader("Accept-Encoding").getValue(), is("gzip, deflate"));
+        assertThat(wrapper.get("/go/api/stages"), is("compressed response"));
+    }
+
+    @Test
+    public void testShouldRetryRequestsThatFailTemporarily() throws Exception {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethodThatReturnsValueOnlyOnce());
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        wrapper.setClient(new UnavailableOnceHttpClient());
+
+        assertThat(wrapper.get("/go/api/stages"), is("some response"));
+    }
+
+    @Test
+    public void testShouldRetryAResponseWhoseBodyStopsArriving() throws Exception {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethodThatTimesOutReadingTheBody()).thenReturn(new MockGetMethodWithBody("<stage/>"));
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        MockHttpClient mockHttpClient = new MockHttpClient();
+        wrapper.setClient(mockHttpClient);
+
+        assertThat(wrapper.get("/go/api/stages/1.xml"), is("<stage/>"));
+        assertThat(mockHttpClient.requests.get(), is(2));
+    }
+
+    @Test
+    public void testShouldRetryAResponseWhoseBodyStopsArrivingWhileItIsParsed() throws Exception {
+        HttpMethodFactory mockFactory = mock(HttpMethodFactory.class);
+        when(mockFactory.create(HttpMethodFactory.GET)).thenReturn(new MockGetMethodThatTimesOutReadingTheBody()).thenReturn(new MockGetMethodWithBody("<stage><id>1</id></stage>"));
+
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, mockFactory);
+        MockHttpClient mockHttpClient = new MockHttpClient();
+        wrapper.setClient(mockHttpClient);
+        StreamingResponseParser<String> parser = new StreamingResponseParser<String>() {
+            public String parse(String response) {
+                throw new RuntimeException("Should have been handed the stream instead");
+            }
+
+            public String handle(InputStream response) {
+                return XmlUtil.parse(response).valueOf("/stage/id");
+            }
+        };
+
+        assertThat(wrapper.get("/go/api/stages/1.xml", parser), is("1"));
+        assertThat(mockHttpClient.requests.get(), is(2));
+    }
+
+    @Test
+    public void testShouldHedgeAnInstanceThatTakesLongerThanUsualAndAbortTheRequestThatLost() throws Exception {
+        SlowFirstHttpClient slowHttpClient = new SlowFirstHttpClient(10000);
+        ExecutorService hedgeExecutor = Executors.newCachedThreadPool();
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, new MockGetMethodFactory("<stage/>"));
+        wrapper.setClient(slowHttpClient);
+        wrapper.setHedging(hedgeExecutor, latenciesOf(50));
+        try {
+            assertThat(wrapper.get("/go/api/stages/1.xml"), is("<stage/>"));
+            assertThat(slowHttpClient.requests.get(), is(2));
+            assertTrue(slowHttpClient.secondSentAt - slowHttpClient.firstSentAt >= 40);
+            assertThat(slowHttpClient.firstStopped.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(slowHttpClient.firstInterrupted, is(true));
+        } finally {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testShouldOnlyHedgeRequestsForInstances() throws Exception {
+        SlowFirstHttpClient slowHttpClient = new SlowFirstHttpClient(200);
+        ExecutorService hedgeExecutor = Executors.newCachedThreadPool();
+        HttpClientWrapper wrapper = new HttpClientWrapper("hostname", 8153, null, null, new MockGetMethodFactory("<feed/>"));
+        wrapper.setClient(slowHttpClient);
+        wrapper.setHedging(hedgeExecutor, latenciesOf(50));
+        try {
+            assertThat(wrapper.get("/go/api/pipelines/pipeline/stages.xml"), is("<feed/>"));
+            assertThat(slowHttpClient.requests.get(), is(1));
+        } finally {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    private LatencyTracker latenciesOf(long latencyMillis) {
+        LatencyTracker latencies = new LatencyTracker(200, 20);
+        for (int i = 0; i < 20; i++) {
+            latencies.record(latencyMillis);
+        }
+        return latencies;
+    }
+
+    private static class SlowFirstHttpClient extends HttpClient {
+        final long slowFor;
+        final AtomicInteger requests = new AtomicInteger();
+        final CountDownLatch firstStopped = new CountDownLatch(1);
+        volatile long firstSentAt;
+        volatile long secondSentAt;
+        volatile boolean firstInterrupted;
+
+        private SlowFirstHttpClient(long slowFor) {
+            this.slowFor = slowFor;
+        }
+
+        @Override
+        public int executeMethod(HttpMethod httpMethod) throws IOException {
+            if (requests.incrementAndGet() == 1) {
+                firstSentAt = System.currentTimeMillis();
+                try {
+                    Thread.sleep(slowFor);
+                } catch (InterruptedException e) {
+                    firstInterrupted = true;
+                    throw new InterruptedIOException();
+                } finally {
+                    firstStopped.countDown();
+                }
+            } else {
+                secondSentAt = System.currentTimeMillis();
+            }
+            ((MockGetMethod) httpMethod).addHeader("Etag", "123");
+            return 200;
+        }
+    }
+
+    private static class MockGetMethodFactory extends HttpMethodFactory {
+        private final String body;
+
+        private MockGetMethodFactory(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public HttpMethod create(String method) {
+            return new MockGetMethodWithBody(body);
+        }
+    }
+
+    private static class UnavailableOnceHttpClient extends HttpClient {
+        boolean failed;
+
+        @Override
+        public int executeMethod(HttpMethod httpMethod) throws IOException {
+            if (!failed) {
+                failed = true;
+                return 503;
+            }
+            return 200;
+        }
+    }
+
+    private static class MissingHttpClient extends HttpClient {
+        final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public int executeMethod(HttpMethod httpMethod) throws IOException {
+            requests.incrementAndGet();
+            return 404;
+        }
+    }
+
+    private static class BlockingHttpClient extends HttpClient {
+        final CountDownLatch requestSent = new CountDownLatch(1);
+        final CountDownLatch respond = new CountDownLatch(1);
+        final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public int executeMethod(HttpMethod httpMethod) throws IOException {
+            requests.incrementAndGet();
+            requestSent.countDown();
+            try {
+                respond.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return 200;
+        }
+    }
+
     private static class MockHttpClient extends HttpClient {
 
-        Header requestEtag;
+        volatile Header requestEtag;
+        final AtomicInteger requests = new AtomicInteger();
 
         @Override
         public int executeMethod(HttpMethod httpMethod) throws IOException {
             this.requestEtag = httpMethod.getRequestHeader("If-None-Match");
+            requests.incrementAndGet();
             if (requestEtag == null) {
                 ((MockGetMethod) httpMethod).addHeader("Etag", "123");
                 return 200;
@@ -130,6 +653,43 @@ public class HttpClientWrapperTest {
         }
     }
 
+    private static class MockGetMethodWithBody extends MockGetMethod {
+        private final String body;
+
+        private MockGetMethodWithBody(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public InputStream getResponseBodyAsStream() throws IOException {
+            return new ByteArrayInputStream(body.getBytes());
+        }
+
+        @Override
+        public String getResponseBodyAsString() throws IOException {
+            return body;
+        }
+    }
+
+    private static class MockGetMethodThatAnswersWithItsPath extends MockGetMethod {
+        @Override
+        public InputStream getResponseBodyAsStream() throws IOException {
+            return new ByteArrayInputStream(getPath().getBytes());
+        }
+    }
+
+    private static class MockGetMethodThatTimesOutReadingTheBody extends MockGetMethod {
+        @Override
+        public InputStream getResponseBodyAsStream() throws IOException {
+            return new SequenceInputStream(new ByteArrayInputStream("<stage><id>".getBytes()), new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+            });
+        }
+    }
+
     private static class MockGetMethodThatReturnsValueOnlyOnce extends MockGetMethod {
 
         boolean answered;
@@ -150,4 +710,27 @@ public class HttpClientWrapperTest {
             return new ByteArrayInputStream("some response".getBytes());
         }
     }
+
+    private static class MockGzipGetMethod extends MockGetMethod {
+        private final byte[] gzipped;
+
+        private MockGzipGetMethod(String response) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+            gzip.write(response.getBytes());
+            gzip.close();
+            gzipped = bytes.toByteArray();
+            addHeader("Content-Encoding", "gzip");
+        }
+
+        @Override
+        public InputStream getResponseBodyAsStream() throws IOException {
+            return new ByteArrayInputStream(gzipped);
+        }
+
+        @Override
+        public String getResponseBodyAsString() throws IOException {
+            throw new RuntimeException("Should have decoded the stream instead");
+        }
+    }
 }
@@ -0,0 +1,26 @@
+package com.thoughtworks.go.http;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class LatencyTrackerTest {
+
+    @Test
+    public void shouldReturnThePercentileOfTheRecentLatencies() throws Exception {
+        LatencyTracker tracker = new LatencyTracker(100, 10);
+        for (int i = 1; i <= 200; i++) {
+            tracker.record(i);
+        }
+        assertThat(tracker.percentile(95), is(195L));
+        assertThat(tracker.percentile(50), is(150L));
+    }
+
+    @Test
+    public void shouldNotGuessUntilThereAreEnoughSamples() throws Exception {
+        LatencyTracker tracker = new LatencyTracker(100, 10);
+        tracker.record(10);
+        assertThat(tracker.percentile(95), is(-1L));
+    }
+}
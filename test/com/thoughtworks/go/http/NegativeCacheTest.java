@@ -0,0 +1,30 @@
+package com.thoughtworks.go.http;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class NegativeCacheTest {
+
+    @Test
+    public void shouldRememberFailuresForTheTimeConfiguredForTheirStatusCode() throws Exception {
+        Map<Integer, Long> timesToLive = new HashMap<Integer, Long>();
+        timesToLive.put(404, 60 * 1000L);
+        timesToLive.put(403, 1L);
+        NegativeCache cache = new NegativeCache(timesToLive);
+
+        cache.failed("http://host/go/api/stages/1.xml", 404);
+        cache.failed("http://host/go/api/stages/2.xml", 403);
+        cache.failed("http://host/go/api/stages/3.xml", 500);
+        Thread.sleep(10);
+
+        assertThat(cache.returnCode("http://host/go/api/stages/1.xml"), is(404));
+        assertThat(cache.returnCode("http://host/go/api/stages/2.xml"), is(0));
+        assertThat(cache.returnCode("http://host/go/api/stages/3.xml"), is(0));
+        assertThat(cache.returnCode("http://host/go/api/stages/4.xml"), is(0));
+    }
+}
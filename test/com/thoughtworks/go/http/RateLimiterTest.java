@@ -0,0 +1,25 @@
+package com.thoughtworks.go.http;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class RateLimiterTest {
+
+    @Test
+    public void shouldLetABurstThroughAndThenThrottle() throws Exception {
+        RateLimiter limiter = new RateLimiter(0.1, 2);
+        assertThat(limiter.tryAcquire(), is(true));
+        assertThat(limiter.tryAcquire(), is(true));
+        assertThat(limiter.tryAcquire(), is(false));
+    }
+
+    @Test
+    public void shouldNotThrottleWhenThereIsNoLimit() throws Exception {
+        RateLimiter limiter = new RateLimiter(0, 1);
+        for (int i = 0; i < 100; i++) {
+            assertThat(limiter.tryAcquire(), is(true));
+        }
+    }
+}
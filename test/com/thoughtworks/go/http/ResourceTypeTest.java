@@ -0,0 +1,29 @@
+package com.thoughtworks.go.http;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ResourceTypeTest {
+
+    @Test
+    public void shouldTellResourcesApartByTheirPath() throws Exception {
+        assertThat(ResourceType.of("/api/pipelines/pipeline/stages.xml"), is(ResourceType.FEED));
+        assertThat(ResourceType.of("/api/pipelines/pipeline/stages.xml?before=8"), is(ResourceType.FEED));
+        assertThat(ResourceType.of("http://host:8153/go/api/stages/9.xml"), is(ResourceType.STAGE));
+        assertThat(ResourceType.of("/api/jobs/1.xml"), is(ResourceType.JOB));
+        assertThat(ResourceType.of("/api/pipelines/pipeline/9.xml"), is(ResourceType.PIPELINE));
+        assertThat(ResourceType.of("/files/pipeline/9/stage/1/job/cruise-output/log.xml"), is(ResourceType.ARTIFACT));
+        assertThat(ResourceType.of("/go/api/stages"), is(ResourceType.OTHER));
+    }
+
+    @Test
+    public void shouldKnowThatFinishedStagesAndJobsCannotChange() throws Exception {
+        assertThat(ResourceType.STAGE.isFinished("<stage><state>Passed</state></stage>"), is(true));
+        assertThat(ResourceType.STAGE.isFinished("<stage><state>Building</state></stage>"), is(false));
+        assertThat(ResourceType.JOB.isFinished("<job><state>Completed</state></job>"), is(true));
+        assertThat(ResourceType.JOB.isFinished("<job><state>Building</state></job>"), is(false));
+        assertThat(ResourceType.PIPELINE.isFinished("<pipeline><state>Passed</state></pipeline>"), is(false));
+    }
+}
@@ -0,0 +1,78 @@
+package com.thoughtworks.go.http.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class CacheEvictorTest {
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private File folder;
+    private SegmentCacheStore store;
+    private long now;
+
+    @Before
+    public void setup() throws Exception {
+        folder = new File("target/cache_evictor");
+        FileUtils.deleteQuietly(folder);
+        store = new SegmentCacheStore(folder, 1024 * 1024);
+        now = System.currentTimeMillis();
+    }
+
+    @After
+    public void teardown() {
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @Test
+    public void shouldEvictFeedsLongBeforeFinishedStages() throws Exception {
+        store.write("http://host/go/api/pipelines/pipeline/stages.xml", new ResponseMetadata("1", now - 2 * DAY, false), "<feed/>".getBytes());
+        store.write("http://host/go/api/stages/1.xml", new ResponseMetadata("2", now - 2 * DAY, true), "<stage/>".getBytes());
+        store.write("http://host/go/api/stages/2.xml", new ResponseMetadata("3", now - 40 * DAY, true), "<stage/>".getBytes());
+
+        int evicted = new CacheEvictor(new EvictionPolicy(0, DAY, 30 * DAY), 100).evict(store);
+
+        assertThat(evicted, is(2));
+        assertThat(store.metadata("http://host/go/api/pipelines/pipeline/stages.xml"), is(nullValue()));
+        assertThat(store.metadata("http://host/go/api/stages/1.xml"), is(notNullValue()));
+        assertThat(store.metadata("http://host/go/api/stages/2.xml"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldEvictFeedsAndThenTheOldestStagesWhenTheCacheIsTooBig() throws Exception {
+        store.write("http://host/go/api/stages/1.xml", new ResponseMetadata("1", now - 3 * DAY, true), new byte[100]);
+        store.write("http://host/go/api/stages/2.xml", new ResponseMetadata("2", now - 2 * DAY, true), new byte[100]);
+        store.write("http://host/go/api/pipelines/pipeline/stages.xml", new ResponseMetadata("3", now - 4 * DAY, false), new byte[100]);
+        store.write("http://host/go/api/stages/3.xml", new ResponseMetadata("4", now - DAY, true), new byte[100]);
+        long recordSize = store.list().get(0).getSize();
+
+        new CacheEvictor(new EvictionPolicy(2 * recordSize, 0, 0), 100).evict(store);
+
+        assertThat(store.metadata("http://host/go/api/pipelines/pipeline/stages.xml"), is(nullValue()));
+        assertThat(store.metadata("http://host/go/api/stages/1.xml"), is(nullValue()));
+        assertThat(store.metadata("http://host/go/api/stages/2.xml"), is(notNullValue()));
+        assertThat(store.metadata("http://host/go/api/stages/3.xml"), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldOnlyEvictABatchOfResponsesAtATime() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            store.write("http://host/go/api/stages/" + i + ".xml", new ResponseMetadata("" + i, now - 2 * DAY, false), "<stage/>".getBytes());
+        }
+        CacheEvictor evictor = new CacheEvictor(new EvictionPolicy(0, DAY, DAY), 2);
+
+        assertThat(evictor.evict(store), is(2));
+        assertThat(store.list().size(), is(3));
+        assertThat(evictor.evict(store), is(2));
+        assertThat(evictor.evict(store), is(1));
+        assertThat(store.list().size(), is(0));
+    }
+}
@@ -0,0 +1,73 @@
+package com.thoughtworks.go.http.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CacheSnapshotTest {
+    private File folder;
+
+    @Before
+    public void setup() {
+        folder = new File("target/cache_snapshot");
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @After
+    public void teardown() {
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @Test
+    public void shouldCarryResponsesOverToAnotherStore() throws Exception {
+        SegmentCacheStore source = new SegmentCacheStore(new File(folder, "source"), 1024);
+        source.write("http://host/go/api/stages/1.xml", new ResponseMetadata("1", 42, true), "<stage counter='1'/>".getBytes());
+        source.write("http://host/go/api/pipelines/pipeline/stages.xml", new ResponseMetadata("2", 43, false), "<feed/>".getBytes());
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+
+        assertThat(CacheSnapshot.export(source, snapshot), is(2));
+
+        FileCacheStore destination = new FileCacheStore(new File(folder, "destination"));
+        assertThat(CacheSnapshot.restore(destination, new ByteArrayInputStream(snapshot.toByteArray())), is(2));
+        assertThat(destination.metadata("http://host/go/api/stages/1.xml").getEtag(), is("1"));
+        assertThat(destination.metadata("http://host/go/api/stages/1.xml").isImmutable(), is(true));
+        assertThat(IOUtils.toString(destination.open("http://host/go/api/stages/1.xml")), is("<stage counter='1'/>"));
+        assertThat(destination.metadata("http://host/go/api/pipelines/pipeline/stages.xml").getEtag(), is("2"));
+        assertThat(IOUtils.toString(destination.open("http://host/go/api/pipelines/pipeline/stages.xml")), is("<feed/>"));
+    }
+
+    @Test
+    public void shouldKeepResponsesThatAreNewerThanTheSnapshot() throws Exception {
+        SegmentCacheStore source = new SegmentCacheStore(new File(folder, "source"), 1024);
+        source.write("http://host/go/api/pipelines/pipeline/stages.xml", new ResponseMetadata("1", 42, false), "<feed page='1'/>".getBytes());
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        CacheSnapshot.export(source, snapshot);
+
+        SegmentCacheStore destination = new SegmentCacheStore(new File(folder, "destination"), 1024);
+        destination.write("http://host/go/api/pipelines/pipeline/stages.xml", new ResponseMetadata("2", 43, false), "<feed page='2'/>".getBytes());
+
+        assertThat(CacheSnapshot.restore(destination, new ByteArrayInputStream(snapshot.toByteArray())), is(0));
+        assertThat(IOUtils.toString(destination.open("http://host/go/api/pipelines/pipeline/stages.xml")), is("<feed page='2'/>"));
+    }
+
+    @Test
+    public void shouldRefuseAnythingThatIsNotASnapshot() throws Exception {
+        try {
+            CacheSnapshot.restore(new FileCacheStore(folder), new ByteArrayInputStream("<feed/>".getBytes()));
+            fail("Should have refused");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("Not a cache snapshot"));
+        }
+    }
+}
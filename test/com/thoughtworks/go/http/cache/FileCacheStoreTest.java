@@ -0,0 +1,128 @@
+package com.thoughtworks.go.http.cache;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class FileCacheStoreTest {
+    private File folder;
+
+    @Before
+    public void setup() {
+        folder = new File("target/file_cache");
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @After
+    public void teardown() {
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @Test
+    public void shouldOnlyEverReadTheBodyThatBelongsToTheEtag() throws Exception {
+        FileCacheStore store = new FileCacheStore(folder);
+        store.write("http://host/go/api/stages/1.xml", new ResponseMetadata("1", false), "<stage state='Building'/>".getBytes());
+        store.write("http://host/go/api/stages/1.xml", new ResponseMetadata("2", true), "<stage state='Passed'/>".getBytes());
+
+        assertThat(store.metadata("http://host/go/api/stages/1.xml").getEtag(), is("2"));
+        assertThat(store.metadata("http://host/go/api/stages/1.xml").isImmutable(), is(true));
+        assertThat(IOUtils.toString(store.open("http://host/go/api/stages/1.xml")), is("<stage state='Passed'/>"));
+        assertThat(folder.list().length, is(2));
+
+        String key = DigestUtils.md5Hex("http://host/go/api/stages/1.xml");
+        new File(folder, key + "_" + DigestUtils.md5Hex("2")).delete();
+        assertThat(store.open("http://host/go/api/stages/1.xml"), is(nullValue()));
+        assertThat(store.metadata("http://host/go/api/stages/1.xml"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldOnlyLookAtTheFolderWhenCreatedAndMaintained() throws Exception {
+        new FileCacheStore(folder).write("http://host/go/api/stages/1.xml", new ResponseMetadata("1", false), "<stage/>".getBytes());
+
+        FileCacheStore store = new FileCacheStore(folder);
+        assertThat(store.metadata("http://host/go/api/stages/1.xml").getEtag(), is("1"));
+
+        FileCacheStore other = new FileCacheStore(folder);
+        other.write("http://host/go/api/stages/2.xml", new ResponseMetadata("2", false), "<stage/>".getBytes());
+        other.remove("http://host/go/api/stages/1.xml");
+        assertThat(store.metadata("http://host/go/api/stages/1.xml").getEtag(), is("1"));
+        assertThat(store.metadata("http://host/go/api/stages/2.xml"), is(nullValue()));
+
+        store.maintain();
+        assertThat(store.metadata("http://host/go/api/stages/1.xml"), is(nullValue()));
+        assertThat(IOUtils.toString(store.open("http://host/go/api/stages/2.xml")), is("<stage/>"));
+    }
+
+    @Test
+    public void shouldTakeOverACacheFolderWrittenByEarlierVersions() throws Exception {
+        long threeDaysAgo = (System.currentTimeMillis() - 3 * 24 * 60 * 60 * 1000) / 1000 * 1000;
+        String finished = DigestUtils.md5Hex("http://host/go/api/stages/1.xml");
+        String feed = DigestUtils.md5Hex("http://host/go/api/pipelines/pipeline/stages.xml");
+        String orphan = DigestUtils.md5Hex("http://host/go/api/stages/2.xml");
+        writeLegacy(finished, "<stage state='Passed'/>", threeDaysAgo);
+        writeLegacy(feed, "<feed/>", threeDaysAgo);
+        FileUtils.writeStringToFile(new File(folder, finished + "_etag"), "1");
+        FileUtils.writeStringToFile(new File(folder, feed + "_etag"), "2");
+        FileUtils.touch(new File(folder, finished + "_immutable"));
+        new File(folder, finished + "_etag").setLastModified(threeDaysAgo);
+        new File(folder, feed + "_etag").setLastModified(threeDaysAgo);
+
+        FileCacheStore store = new FileCacheStore(folder);
+
+        ResponseMetadata stage = store.metadata("http://host/go/api/stages/1.xml");
+        assertThat(stage.getEtag(), is("1"));
+        assertThat(stage.isImmutable(), is(true));
+        assertThat(stage.getStoredAt(), is(threeDaysAgo));
+        assertThat(IOUtils.toString(store.open("http://host/go/api/stages/1.xml")), is("<stage state='Passed'/>"));
+        ResponseMetadata page = store.metadata("http://host/go/api/pipelines/pipeline/stages.xml");
+        assertThat(page.getEtag(), is("2"));
+        assertThat(page.isImmutable(), is(false));
+        assertThat(page.getStoredAt(), is(threeDaysAgo));
+        assertThat(IOUtils.toString(store.open("http://host/go/api/pipelines/pipeline/stages.xml")), is("<feed/>"));
+
+        writeLegacy(orphan, "<stage/>", threeDaysAgo);
+        store.maintain();
+
+        assertThat(new File(folder, orphan).exists(), is(false));
+        assertThat(new File(folder, finished).exists(), is(false));
+        assertThat(new File(folder, finished + "_immutable").exists(), is(false));
+        assertThat(folder.list().length, is(4));
+        assertThat(new FileCacheStore(folder).metadata("http://host/go/api/stages/1.xml").isImmutable(), is(true));
+    }
+
+    private void writeLegacy(String key, String body, long lastModified) throws Exception {
+        File file = new File(folder, key);
+        FileUtils.writeStringToFile(file, body);
+        file.setLastModified(lastModified);
+    }
+
+    @Test
+    public void shouldDeleteBodiesAndPendingFilesThatWereNeverPublished() throws Exception {
+        FileCacheStore store = new FileCacheStore(folder);
+        store.write("http://host/go/api/stages/1.xml", new ResponseMetadata("1", false), "<stage/>".getBytes());
+        String key = DigestUtils.md5Hex("http://host/go/api/stages/1.xml");
+        File orphan = new File(folder, key + "_" + DigestUtils.md5Hex("0"));
+        FileUtils.writeStringToFile(orphan, "<stage/>", "UTF-8");
+        File pending = store.newPendingFile();
+        File recentOrphan = new File(folder, key + "_" + DigestUtils.md5Hex("3"));
+        FileUtils.writeStringToFile(recentOrphan, "<stage/>", "UTF-8");
+        orphan.setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000);
+        pending.setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000);
+
+        store.maintain();
+
+        assertThat(orphan.exists(), is(false));
+        assertThat(pending.exists(), is(false));
+        assertThat(recentOrphan.exists(), is(true));
+        assertThat(IOUtils.toString(store.open("http://host/go/api/stages/1.xml")), is("<stage/>"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.thoughtworks.go.http.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ResponseCacheTest {
+    private File folder;
+
+    @Before
+    public void setup() {
+        folder = new File("target/response_cache");
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @After
+    public void teardown() {
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @Test
+    public void shouldServeResponsesHeldInMemoryWithoutReadingTheDisk() throws Exception {
+        ResponseCache cache = new ResponseCache(folder, 1024);
+        cache.put("http://host/go/api/stages/1.xml", new ResponseMetadata("123", false), "<stage/>");
+        FileUtils.deleteDirectory(folder);
+
+        assertThat(cache.etag("http://host/go/api/stages/1.xml"), is("123"));
+        assertThat(cache.body("http://host/go/api/stages/1.xml"), is("<stage/>"));
+    }
+
+    @Test
+    public void shouldFallBackToTheDiskForResponsesNotInMemory() throws Exception {
+        new ResponseCache(folder, 1024).put("http://host/go/api/stages/1.xml", new ResponseMetadata("123", false), "<stage/>");
+
+        ResponseCache cache = new ResponseCache(folder, 1024);
+        assertThat(cache.etag("http://host/go/api/stages/1.xml"), is("123"));
+        assertThat(cache.body("http://host/go/api/stages/1.xml"), is("<stage/>"));
+        assertThat(cache.etag("http://host/go/api/stages/2.xml"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldDecompressGzippedBodiesReadFromTheDisk() throws Exception {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(gzipped);
+        gzip.write("<stage/>".getBytes());
+        gzip.close();
+        new ResponseCache(folder, 1024).put("http://host/go/api/stages/1.xml", new ResponseMetadata("123", false), "<stage/>", gzipped.toByteArray());
+
+        ResponseCache cache = new ResponseCache(folder, 1024);
+        assertThat(IOUtils.toString(cache.stream("http://host/go/api/stages/1.xml")), is("<stage/>"));
+        assertThat(cache.body("http://host/go/api/stages/1.xml"), is("<stage/>"));
+    }
+
+    @Test
+    public void shouldStopEvictingOnceEveryCacheUsingTheFolderIsClosed() throws Exception {
+        ResponseCache first = new ResponseCache(new File(folder, "shared"), 1024);
+        ResponseCache second = new ResponseCache(new File(folder, "shared"), 1024);
+        assertThat(first.store(), is(second.store()));
+
+        first.close();
+        first.close();
+        assertThat(CacheEvictor.isScheduled(second.store()), is(true));
+        second.close();
+        assertThat(CacheEvictor.isScheduled(second.store()), is(false));
+    }
+
+    @Test
+    public void shouldCompressBodiesWrittenToTheDisk() throws Exception {
+        StringBuilder stage = new StringBuilder("<stage>");
+        for (int i = 0; i < 100; i++) {
+            stage.append("<job href='http://host/go/api/jobs/").append(i).append(".xml'/>");
+        }
+        String body = stage.append("</stage>").toString();
+        for (Compression compression : Compression.values()) {
+            FileUtils.deleteQuietly(folder);
+            FileCacheStore store = new FileCacheStore(folder);
+            new ResponseCache(store, 1024, compression, 9).put("http://host/go/api/stages/1.xml", new ResponseMetadata("123", false), body);
+
+            long stored = store.list().get(0).getSize();
+            assertThat(compression.name(), stored < body.length() / 4, is(compression != Compression.NONE));
+            assertThat(new ResponseCache(store, 1024, Compression.NONE, 0).body("http://host/go/api/stages/1.xml"), is(body));
+        }
+    }
+}
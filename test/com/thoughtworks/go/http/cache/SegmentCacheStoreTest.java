@@ -0,0 +1,206 @@
+package com.thoughtworks.go.http.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SegmentCacheStoreTest {
+    private File folder;
+
+    @Before
+    public void setup() {
+        folder = new File("target/segment_cache");
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @After
+    public void teardown() {
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @Test
+    public void shouldRebuildTheIndexFromTheSegmentsWhenOpened() throws Exception {
+        SegmentCacheStore store = new SegmentCacheStore(folder, 1024);
+        store.write("http://host/go/api/stages/1.xml", new ResponseMetadata("1", false), "<stage counter='1'/>".getBytes());
+        store.write("http://host/go/api/stages/2.xml", new ResponseMetadata("2", false), "<stage counter='2'/>".getBytes());
+        store.write("http://host/go/api/stages/1.xml", new ResponseMetadata("3", 42, true), "<stage counter='3'/>".getBytes());
+        store.remove("http://host/go/api/stages/2.xml");
+
+        store = new SegmentCacheStore(folder, 1024);
+        assertThat(store.metadata("http://host/go/api/stages/1.xml").getEtag(), is("3"));
+        assertThat(store.metadata("http://host/go/api/stages/1.xml").getStoredAt(), is(42L));
+        assertThat(store.metadata("http://host/go/api/stages/1.xml").isImmutable(), is(true));
+        assertThat(IOUtils.toString(store.open("http://host/go/api/stages/1.xml")), is("<stage counter='3'/>"));
+        assertThat(store.metadata("http://host/go/api/stages/2.xml"), is(nullValue()));
+        assertThat(store.open("http://host/go/api/stages/2.xml"), is(nullValue()));
+        assertThat(segmentFiles(), is(1));
+    }
+
+    @Test
+    public void shouldKeepTheSameStoreUsableWhenItsFolderIsDeleted() throws Exception {
+        SegmentCacheStore store = SegmentCacheStore.open(folder, 1024);
+        store.write("http://host/go/api/stages/1.xml", new ResponseMetadata("1", false), "<stage counter='1'/>".getBytes());
+
+        FileUtils.deleteDirectory(folder);
+
+        assertThat(SegmentCacheStore.open(folder, 1024), is(sameInstance(store)));
+        assertThat(store.metadata("http://host/go/api/stages/1.xml"), is(nullValue()));
+        store.write("http://host/go/api/stages/2.xml", new ResponseMetadata("2", false), "<stage counter='2'/>".getBytes());
+        store.maintain();
+        assertThat(IOUtils.toString(store.open("http://host/go/api/stages/2.xml")), is("<stage counter='2'/>"));
+        assertThat(new SegmentCacheStore(folder, 1024).metadata("http://host/go/api/stages/2.xml").getEtag(), is("2"));
+    }
+
+    @Test
+    public void shouldStartANewSegmentOnceTheActiveOneIsFull() throws Exception {
+        SegmentCacheStore store = new SegmentCacheStore(folder, 100);
+        for (int i = 0; i < 5; i++) {
+            store.write("http://host/go/api/stages/" + i + ".xml", new ResponseMetadata("" + i, false), new byte[60]);
+        }
+        assertThat(segmentFiles(), is(5));
+        assertThat(IOUtils.toByteArray(new SegmentCacheStore(folder, 100).open("http://host/go/api/stages/3.xml")).length, is(60));
+    }
+
+    @Test
+    public void shouldNeverLetASegmentGrowPastWhatCanBeMapped() throws Exception {
+        SegmentCacheStore store = new SegmentCacheStore(folder, Long.MAX_VALUE, 250);
+        for (int i = 0; i < 3; i++) {
+            store.write("http://host/go/api/stages/" + i + ".xml", new ResponseMetadata("" + i, false), new byte[60]);
+        }
+        assertThat(segmentFiles(), is(2));
+        for (File segment : folder.listFiles((FileFilter) new SuffixFileFilter(".dat"))) {
+            assertThat(segment.length() <= 250, is(true));
+        }
+        try {
+            store.write("http://host/go/api/stages/3.xml", new ResponseMetadata("3", false), new byte[250]);
+            fail("The response cannot fit in a segment");
+        } catch (IOException expected) {
+        }
+        assertThat(store.metadata("http://host/go/api/stages/3.xml"), is(nullValue()));
+        assertThat(IOUtils.toByteArray(new SegmentCacheStore(folder, Long.MAX_VALUE, 250).open("http://host/go/api/stages/2.xml")).length, is(60));
+    }
+
+    @Test
+    public void shouldCompactTheSegmentsOnceMostOfThemAreDead() throws Exception {
+        SegmentCacheStore store = new SegmentCacheStore(folder, 1000);
+        for (int i = 0; i < 10; i++) {
+            store.write("http://host/go/api/pipelines/pipeline/stages.xml", new ResponseMetadata("" + i, false), ("<feed page='" + i + "'/>").getBytes());
+        }
+        for (int i = 0; i < 10; i++) {
+            store.maintain();
+        }
+        assertThat(store.deadBytes() < 1000 / 2, is(true));
+        assertThat(IOUtils.toString(store.open("http://host/go/api/pipelines/pipeline/stages.xml")), is("<feed page='9'/>"));
+        assertThat(IOUtils.toString(new SegmentCacheStore(folder, 1000).open("http://host/go/api/pipelines/pipeline/stages.xml")), is("<feed page='9'/>"));
+    }
+
+    @Test
+    public void shouldCompactASegmentLargerThanOneStepAFewRecordsAtATime() throws Exception {
+        SegmentCacheStore store = new SegmentCacheStore(folder, 8 * SegmentCacheStore.COMPACTION_STEP);
+        byte[] body = new byte[(int) (SegmentCacheStore.COMPACTION_STEP / 2)];
+        for (int i = 0; i < 3; i++) {
+            body[0] = (byte) i;
+            store.write("http://host/go/api/stages/" + i + ".xml", new ResponseMetadata("" + i, false), body);
+        }
+        for (int i = 0; i < 8; i++) {
+            store.write("http://host/go/api/pipelines/pipeline/stages.xml", new ResponseMetadata("" + i, false), body);
+        }
+        store.maintain();
+
+        assertThat(new File(folder, "segment-00000001.dat").exists(), is(false));
+        SegmentCacheStore reopened = new SegmentCacheStore(folder, 8 * SegmentCacheStore.COMPACTION_STEP);
+        for (int i = 0; i < 3; i++) {
+            byte[] compacted = IOUtils.toByteArray(reopened.open("http://host/go/api/stages/" + i + ".xml"));
+            assertThat(compacted.length, is(body.length));
+            assertThat(compacted[0], is((byte) i));
+        }
+        assertThat(reopened.metadata("http://host/go/api/pipelines/pipeline/stages.xml").getEtag(), is("7"));
+    }
+
+    @Test
+    public void shouldIgnoreARecordThatWasOnlyPartlyWritten() throws Exception {
+        SegmentCacheStore store = new SegmentCacheStore(folder, 1024);
+        store.write("http://host/go/api/stages/1.xml", new ResponseMetadata("1", false), "<stage/>".getBytes());
+        store.write("http://host/go/api/stages/2.xml", new ResponseMetadata("2", false), "<stage/>".getBytes());
+        RandomAccessFile segment = new RandomAccessFile(new File(folder, "segment-00000001.dat"), "rw");
+        segment.setLength(segment.length() - 3);
+        segment.close();
+
+        store = new SegmentCacheStore(folder, 1024);
+        assertThat(store.metadata("http://host/go/api/stages/1.xml").getEtag(), is("1"));
+        assertThat(store.metadata("http://host/go/api/stages/2.xml"), is(nullValue()));
+        store.write("http://host/go/api/stages/3.xml", new ResponseMetadata("3", false), "<stage/>".getBytes());
+        assertThat(new SegmentCacheStore(folder, 1024).metadata("http://host/go/api/stages/3.xml").getEtag(), is("3"));
+    }
+
+    @Test
+    public void shouldLetSeveralProcessesAppendToTheSameFolder() throws Exception {
+        SegmentCacheStore first = new SegmentCacheStore(folder, 1024);
+        SegmentCacheStore second = new SegmentCacheStore(folder, 1024);
+        first.write("http://host/go/api/stages/1.xml", new ResponseMetadata("1", false), "<stage counter='1'/>".getBytes());
+        second.write("http://host/go/api/stages/2.xml", new ResponseMetadata("2", false), "<stage counter='2'/>".getBytes());
+        first.write("http://host/go/api/stages/1.xml", new ResponseMetadata("3", false), "<stage counter='3'/>".getBytes());
+
+        assertThat(second.metadata("http://host/go/api/stages/1.xml").getEtag(), is("1"));
+        second.maintain();
+        assertThat(second.metadata("http://host/go/api/stages/1.xml").getEtag(), is("3"));
+        assertThat(IOUtils.toString(second.open("http://host/go/api/stages/1.xml")), is("<stage counter='3'/>"));
+        assertThat(IOUtils.toString(first.open("http://host/go/api/stages/2.xml")), is("<stage counter='2'/>"));
+
+        SegmentCacheStore reopened = new SegmentCacheStore(folder, 1024);
+        assertThat(IOUtils.toString(reopened.open("http://host/go/api/stages/1.xml")), is("<stage counter='3'/>"));
+        assertThat(IOUtils.toString(reopened.open("http://host/go/api/stages/2.xml")), is("<stage counter='2'/>"));
+    }
+
+    @Test
+    public void shouldFollowSegmentsThatAnotherProcessCompacted() throws Exception {
+        SegmentCacheStore first = new SegmentCacheStore(folder, 1024);
+        SegmentCacheStore second = new SegmentCacheStore(folder, 1024);
+        first.write("http://host/go/api/stages/1.xml", new ResponseMetadata("1", false), "<stage counter='1'/>".getBytes());
+        second.maintain();
+
+        first.compact();
+        second.write("http://host/go/api/stages/2.xml", new ResponseMetadata("2", false), "<stage counter='2'/>".getBytes());
+
+        assertThat(new File(folder, "segment-00000001.dat").exists(), is(false));
+        assertThat(IOUtils.toString(second.open("http://host/go/api/stages/1.xml")), is("<stage counter='1'/>"));
+        assertThat(IOUtils.toString(new SegmentCacheStore(folder, 1024).open("http://host/go/api/stages/2.xml")), is("<stage counter='2'/>"));
+    }
+
+    @Test
+    public void shouldMissRatherThanBringBackASegmentThatAnotherProcessCompactedAway() throws Exception {
+        SegmentCacheStore writer = new SegmentCacheStore(folder, 200);
+        SegmentCacheStore reader = new SegmentCacheStore(folder, 200);
+        writer.write("http://host/go/api/stages/1.xml", new ResponseMetadata("1", false), "<stage counter='1'/>".getBytes());
+        writer.write("http://host/go/api/stages/2.xml", new ResponseMetadata("2", false), "<stage counter='2'/>".getBytes());
+        writer.write("http://host/go/api/stages/3.xml", new ResponseMetadata("3", false), "<stage counter='3'/>".getBytes());
+        writer.write("http://host/go/api/stages/4.xml", new ResponseMetadata("4", false), "<stage counter='4'/>".getBytes());
+        reader.maintain();
+
+        writer.remove("http://host/go/api/stages/1.xml");
+        writer.compact();
+
+        assertThat(IOUtils.toString(reader.open("http://host/go/api/stages/2.xml")), is("<stage counter='2'/>"));
+        assertThat(reader.open("http://host/go/api/stages/1.xml"), is(nullValue()));
+        assertThat(reader.metadata("http://host/go/api/stages/1.xml"), is(nullValue()));
+        assertThat(new File(folder, "segment-00000001.dat").exists(), is(false));
+    }
+
+    private int segmentFiles() {
+        return folder.list(new SuffixFileFilter(".dat")).length;
+    }
+}
@@ -0,0 +1,44 @@
+package com.thoughtworks.go.http.metrics;
+
+import com.thoughtworks.go.http.ResourceType;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class RequestStatisticsTest {
+
+    @Test
+    public void shouldBreakDownTheRequestsOfEachTypeOfResource() throws Exception {
+        RequestStatistics statistics = new RequestStatistics();
+        statistics.requestCompleted(ResourceType.STAGE, 200, 40, 1000, false);
+        statistics.requestCompleted(ResourceType.STAGE, 304, 5, 0, true);
+        statistics.requestCompleted(ResourceType.STAGE, 503, 3000, 0, false);
+        statistics.requestCompleted(ResourceType.FEED, 200, 20, 500, false);
+
+        EndpointStatistics stages = statistics.of(ResourceType.STAGE);
+        assertThat(stages.getRequests(), is(3L));
+        assertThat(stages.getOk(), is(1L));
+        assertThat(stages.getNotModified(), is(1L));
+        assertThat(stages.getErrors(), is(1L));
+        assertThat(stages.getBytesTransferred(), is(1000L));
+        assertThat(stages.getCacheHitRatio(), is(1.0 / 3));
+        assertThat(statistics.of(ResourceType.FEED).getRequests(), is(1L));
+        assertThat(statistics.of(ResourceType.JOB).getRequests(), is(0L));
+    }
+
+    @Test
+    public void shouldCountLatenciesInBuckets() throws Exception {
+        EndpointStatistics statistics = new EndpointStatistics();
+        statistics.record(200, 5, 0, false);
+        statistics.record(200, 10, 0, false);
+        statistics.record(200, 30, 0, false);
+        statistics.record(200, 60000, 0, false);
+
+        long[] histogram = statistics.getLatencyHistogram();
+        assertThat(histogram[0], is(2L));
+        assertThat(histogram[2], is(1L));
+        assertThat(histogram[histogram.length - 1], is(1L));
+        assertThat(statistics.getMeanLatency(), is(15011.25));
+    }
+}
@@ -0,0 +1,95 @@
+package com.thoughtworks.go.latest;
+
+import com.thoughtworks.go.domain.Stage;
+import com.thoughtworks.go.http.HttpClientWrapper;
+import com.thoughtworks.go.http.ResourceType;
+import com.thoughtworks.go.server.FakeGoServer;
+import com.thoughtworks.go.util.SystemEnvironment;
+import com.thoughtworks.go.visitor.StageVisitor;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class TalkToGoLatestEndToEndTest {
+    private FakeGoServer server;
+    private HttpClientWrapper httpClient;
+
+    @Before
+    public void setup() throws IOException {
+        FileUtils.deleteQuietly(new File(SystemEnvironment.getCacheFolder()));
+        server = new FakeGoServer().start();
+        httpClient = new HttpClientWrapper(server.getHostname(), server.getPort());
+    }
+
+    @After
+    public void teardown() {
+        httpClient.shutdown();
+        server.stop();
+    }
+
+    @Test
+    public void shouldCrawlEveryPageOfTheFeed() throws Exception {
+        server.serveFixtures();
+        StageVisitor visitor = mock(StageVisitor.class);
+
+        new TalkToGoLatest("pipeline", httpClient, true).visitAllStages(visitor);
+
+        verify(visitor).visitStage(Stage.create(server.fixture("2.4/stage-9.xml")));
+        verify(visitor).visitStage(Stage.create(server.fixture("2.4/stage-8.xml")));
+        verify(visitor).visitStage(Stage.create(server.fixture("2.4/stage-7.xml")));
+        verify(visitor).visitStage(Stage.create(server.fixture("2.4/stage-6.xml")));
+    }
+
+    @Test
+    public void shouldCrawlAGeneratedFeed() throws Exception {
+        server.generateFeed("generated", 60);
+
+        assertThat(new TalkToGoLatest("generated", httpClient, true).stageFeedEntries().size(), is(60));
+        assertThat(server.getRequests(), is(3));
+        assertThat(new TalkToGoLatest("generated", httpClient, false).latestStage("stage").getPipelineUrl().endsWith("/go/api/pipelines/generated/60.xml"), is(true));
+    }
+
+    @Test
+    public void shouldRevalidateWhatWasCrawledBefore() throws Exception {
+        server.generateFeed("generated", 30);
+        TalkToGoLatest talkToGo = new TalkToGoLatest("generated", httpClient, true);
+
+        talkToGo.stageFeedEntries();
+        assertThat(talkToGo.stageFeedEntries().size(), is(30));
+
+        assertThat(server.getNotModified(), is(2));
+        assertThat(httpClient.getStatistics().of(ResourceType.FEED).getNotModified(), is(2L));
+    }
+
+    @Test
+    public void shouldNotAskForFinishedStagesAgain() throws Exception {
+        server.generateFeed("generated", 30);
+        TalkToGoLatest talkToGo = new TalkToGoLatest("generated", httpClient, true);
+
+        talkToGo.visitAllStages(mock(StageVisitor.class));
+        int firstCrawl = server.getRequests();
+        talkToGo.visitAllStages(mock(StageVisitor.class));
+
+        assertThat(firstCrawl, is(2 + 30 + 30));
+        assertThat(server.getRequests() - firstCrawl, is(2 + 30));
+        assertThat(httpClient.getStatistics().of(ResourceType.STAGE).getCacheHitRatio(), is(0.5));
+    }
+
+    @Test
+    public void shouldRetryWhenTheServerFailsTemporarily() throws Exception {
+        server.generateFeed("generated", 10).failNext(SystemEnvironment.getMaxRetries(), 503);
+
+        assertThat(new TalkToGoLatest("generated", httpClient, true).stageFeedEntries().size(), is(10));
+        assertTrue(server.getFailures() > 0);
+    }
+}
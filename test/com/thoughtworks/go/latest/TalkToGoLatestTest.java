@@ -1,6 +1,7 @@
 package com.thoughtworks.go.latest;
 
 import com.thoughtworks.go.domain.FeedEntries;
+import com.thoughtworks.go.domain.FeedEntry;
 import com.thoughtworks.go.domain.Pipeline;
 import com.thoughtworks.go.domain.Stage;
 import com.thoughtworks.go.http.HttpClientWrapper;
@@ -9,6 +10,7 @@ import com.thoughtworks.go.visitor.criteria.VisitingCriteria;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import java.io.File;
 import java.io.IOException;
@@ -16,6 +18,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.*;
 
@@ -27,19 +31,38 @@ public class TalkToGoLatestTest {
     public void setup() throws IOException {
         httpClientWrapper = mock(HttpClientWrapper.class);
         talkToGo = new TalkToGoLatest("pipeline", httpClientWrapper, false);
-        when(httpClientWrapper.get("/api/pipelines/pipeline/stages.xml")).thenReturn(file("2.4/feed.xml"));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/stages.xml", FeedEntries.PARSER)).thenReturn(FeedEntries.create(file("2.4/feed.xml")));
     }
 
     @Test
     public void shouldReturnTheLatestStage() throws Exception {
-        when(httpClientWrapper.get("/api/stages/9.xml")).thenReturn(file("2.4/stage-9.xml"));
+        when(httpClientWrapper.get("/api/stages/9.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-9.xml")));
         assertThat(talkToGo.latestStage("stage"), is(Stage.create(file("2.4/stage-9.xml"))));
     }
 
+    @Test
+    public void shouldNeverHandOutTheStageThatIsShared() throws Exception {
+        Stage shared = Stage.create(file("2.4/stage-9.xml"));
+        when(httpClientWrapper.get("/api/stages/9.xml", Stage.PARSER)).thenReturn(shared);
+        final Stage[] enhanced = new Stage[1];
+        talkToGo = new TalkToGoLatest("pipeline", httpClientWrapper, false) {
+            @Override
+            public void enhance(Stage stage, FeedEntry entry) {
+                enhanced[0] = stage;
+            }
+        };
+
+        Stage latest = talkToGo.latestStage("stage");
+
+        assertThat(latest, is(not(sameInstance(shared))));
+        assertThat(enhanced[0], is(not(sameInstance(shared))));
+        assertThat(latest, is(shared));
+    }
+
     @Test
     public void shouldReturnTheLatestPipeline() throws Exception {
-        when(httpClientWrapper.get("/api/stages/9.xml")).thenReturn(file("2.4/stage-9.xml"));
-        when(httpClientWrapper.get("/api/pipelines/pipeline/9.xml")).thenReturn(file("2.4/pipeline-9.xml"));
+        when(httpClientWrapper.get("/api/stages/9.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-9.xml")));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/9.xml", Pipeline.PARSER)).thenReturn(Pipeline.create(file("2.4/pipeline-9.xml")));
         assertThat(talkToGo.latestPipeline(), is(Pipeline.create(file("2.4/pipeline-9.xml"))));
     }
 
@@ -51,11 +74,11 @@ public class TalkToGoLatestTest {
         Stage stage8 = Stage.create(file("2.4/stage-8.xml"));
         Pipeline pipeline8 = Pipeline.create(file("2.4/pipeline-8.xml"));
 
-        when(httpClientWrapper.get("/api/stages/9.xml")).thenReturn(file("2.4/stage-9.xml"));
-        when(httpClientWrapper.get("/api/pipelines/pipeline/9.xml")).thenReturn(file("2.4/pipeline-9.xml"));
+        when(httpClientWrapper.get("/api/stages/9.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-9.xml")));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/9.xml", Pipeline.PARSER)).thenReturn(Pipeline.create(file("2.4/pipeline-9.xml")));
 
-        when(httpClientWrapper.get("/api/stages/8.xml")).thenReturn(file("2.4/stage-8.xml"));
-        when(httpClientWrapper.get("/api/pipelines/pipeline/8.xml")).thenReturn(file("2.4/pipeline-8.xml"));
+        when(httpClientWrapper.get("/api/stages/8.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-8.xml")));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/8.xml", Pipeline.PARSER)).thenReturn(Pipeline.create(file("2.4/pipeline-8.xml")));
 
         StageVisitor visitor = mock(StageVisitor.class);
         talkToGo.visitAllStages(visitor);
@@ -71,7 +94,7 @@ public class TalkToGoLatestTest {
     public void shouldCallBackForEveryEntryInTheFeedUntilTheEnd() throws Exception {
         talkToGo = new TalkToGoLatest("pipeline", httpClientWrapper, true);
 
-        when(httpClientWrapper.get("/api/pipelines/pipeline/stages.xml")).thenReturn(file("2.4/feed.xml"));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/stages.xml", FeedEntries.PARSER)).thenReturn(FeedEntries.create(file("2.4/feed.xml")));
         stubWithParams("/api/pipelines/pipeline/stages.xml", "2.4/feed-2.xml", "before", 8);
         stubWithParams("/api/pipelines/pipeline/stages.xml", "2.4/feed-3.xml", "before", 6);
         stubVisiting();
@@ -86,6 +109,23 @@ public class TalkToGoLatestTest {
         verify(visitor).visitStage(Stage.create(file("2.4/stage-6.xml")));
     }
 
+    @Test
+    public void shouldVisitTheEntriesOfAPageBeforeAskingForTheNextOne() throws Exception {
+        talkToGo = new TalkToGoLatest("pipeline", httpClientWrapper, true);
+
+        stubWithParams("/api/pipelines/pipeline/stages.xml", "2.4/feed-2.xml", "before", 8);
+        stubWithParams("/api/pipelines/pipeline/stages.xml", "2.4/feed-3.xml", "before", 6);
+        stubVisiting();
+
+        StageVisitor visitor = mock(StageVisitor.class);
+        talkToGo.visitAllStages(visitor);
+
+        InOrder inOrder = inOrder(visitor, httpClientWrapper);
+        inOrder.verify(visitor).visitStage(Stage.create(file("2.4/stage-8.xml")));
+        inOrder.verify(httpClientWrapper).get("/api/pipelines/pipeline/stages.xml", paramMap("before", 8), FeedEntries.PARSER);
+        inOrder.verify(visitor).visitStage(Stage.create(file("2.4/stage-7.xml")));
+    }
+
     @Test
     public void shouldCallBackOnlyIfACriteriaMatches() throws Exception {
         talkToGo = new TalkToGoLatest("pipeline", httpClientWrapper, false);
@@ -93,11 +133,11 @@ public class TalkToGoLatestTest {
         String feedXml = file("2.4/feed.xml");
 
         FeedEntries feedEntries = FeedEntries.create(feedXml);
-        when(httpClientWrapper.get("/api/pipelines/pipeline/stages.xml")).thenReturn(feedXml);
-        when(httpClientWrapper.get("/api/stages/8.xml")).thenReturn(file("2.4/stage-10.xml"));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/stages.xml", FeedEntries.PARSER)).thenReturn(feedEntries);
+        when(httpClientWrapper.get("/api/stages/8.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-10.xml")));
 
-        when(httpClientWrapper.get("/api/stages/9.xml")).thenReturn(file("2.4/stage-11.xml"));
-        when(httpClientWrapper.get("/api/pipelines/pipeline/9.xml")).thenReturn(file("2.4/pipeline-8.xml"));
+        when(httpClientWrapper.get("/api/stages/9.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-11.xml")));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/9.xml", Pipeline.PARSER)).thenReturn(Pipeline.create(file("2.4/pipeline-8.xml")));
 
         VisitingCriteria criteria = mock(VisitingCriteria.class);
         when(criteria.shouldVisit(feedEntries.getEntries().get(0))).thenReturn(true);
@@ -117,11 +157,11 @@ public class TalkToGoLatestTest {
         String feedXml = file("2.4/feed.xml");
 
         FeedEntries feedEntries = FeedEntries.create(feedXml);
-        when(httpClientWrapper.get("/api/pipelines/pipeline/stages.xml")).thenReturn(feedXml);
-        when(httpClientWrapper.get("/api/stages/8.xml")).thenReturn(file("2.4/stage-10.xml"));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/stages.xml", FeedEntries.PARSER)).thenReturn(feedEntries);
+        when(httpClientWrapper.get("/api/stages/8.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-10.xml")));
 
-        when(httpClientWrapper.get("/api/stages/9.xml")).thenReturn(file("2.4/stage-11.xml"));
-        when(httpClientWrapper.get("/api/pipelines/pipeline/9.xml")).thenReturn(file("2.4/pipeline-8.xml"));
+        when(httpClientWrapper.get("/api/stages/9.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-11.xml")));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/9.xml", Pipeline.PARSER)).thenReturn(Pipeline.create(file("2.4/pipeline-8.xml")));
 
         VisitingCriteria criteria = mock(VisitingCriteria.class);
         when(criteria.shouldVisit(feedEntries.getEntries().get(0))).thenReturn(true);
@@ -137,22 +177,22 @@ public class TalkToGoLatestTest {
     }
 
     private void stubVisiting() throws IOException {
-        when(httpClientWrapper.get("/api/stages/9.xml")).thenReturn(file("2.4/stage-9.xml"));
-        when(httpClientWrapper.get("/api/pipelines/pipeline/9.xml")).thenReturn(file("2.4/pipeline-9.xml"));
+        when(httpClientWrapper.get("/api/stages/9.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-9.xml")));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/9.xml", Pipeline.PARSER)).thenReturn(Pipeline.create(file("2.4/pipeline-9.xml")));
 
-        when(httpClientWrapper.get("/api/stages/8.xml")).thenReturn(file("2.4/stage-8.xml"));
-        when(httpClientWrapper.get("/api/pipelines/pipeline/8.xml")).thenReturn(file("2.4/pipeline-8.xml"));
+        when(httpClientWrapper.get("/api/stages/8.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-8.xml")));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/8.xml", Pipeline.PARSER)).thenReturn(Pipeline.create(file("2.4/pipeline-8.xml")));
 
-        when(httpClientWrapper.get("/api/stages/7.xml")).thenReturn(file("2.4/stage-7.xml"));
-        when(httpClientWrapper.get("/api/pipelines/pipeline/7.xml")).thenReturn(file("2.4/pipeline-8.xml"));
+        when(httpClientWrapper.get("/api/stages/7.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-7.xml")));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/7.xml", Pipeline.PARSER)).thenReturn(Pipeline.create(file("2.4/pipeline-8.xml")));
 
-        when(httpClientWrapper.get("/api/stages/6.xml")).thenReturn(file("2.4/stage-6.xml"));
-        when(httpClientWrapper.get("/api/pipelines/pipeline/6.xml")).thenReturn(file("2.4/pipeline-8.xml"));
+        when(httpClientWrapper.get("/api/stages/6.xml", Stage.PARSER)).thenReturn(Stage.create(file("2.4/stage-6.xml")));
+        when(httpClientWrapper.get("/api/pipelines/pipeline/6.xml", Pipeline.PARSER)).thenReturn(Pipeline.create(file("2.4/pipeline-8.xml")));
     }
 
     private void stubWithParams(String path, String resourceFile, String param, int value) throws IOException {
         Map<String, String> methodParams = paramMap(param, value);
-        when(httpClientWrapper.get(path, methodParams)).thenReturn(file(resourceFile));
+        when(httpClientWrapper.get(path, methodParams, FeedEntries.PARSER)).thenReturn(FeedEntries.create(file(resourceFile)));
     }
 
     private Map<String, String> paramMap(String param, int value) {
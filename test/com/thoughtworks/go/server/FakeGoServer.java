@@ -0,0 +1,326 @@
+package com.thoughtworks.go.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @understands standing in for a Go server over real http, so that the client can be exercised end to end
+ *
+ * Resources are held in memory and served under /go. Links in the fixtures that point at the Go server they were
+ * captured from are rewritten to point at this server. Every response carries an etag derived from its body, and a
+ * request that sends the current etag gets a 304. Latency and failures can be injected to see how the client copes.
+ */
+public class FakeGoServer {
+    private static final String FIXTURE_SERVER = "http://go03.thoughtworks.com:8153";
+    private static final int FEED_PAGE_SIZE = 25;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, String> resources = new ConcurrentHashMap<String, String>();
+    private final Random random = new Random();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger failuresToInject = new AtomicInteger();
+    private volatile long latency;
+    private volatile double failureRate;
+    private volatile int failureCode = 503;
+    private volatile boolean etags = true;
+    private volatile boolean compression = true;
+
+    public FakeGoServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/go/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(executor);
+    }
+
+    public FakeGoServer start() {
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getHostname() {
+        return server.getAddress().getHostName();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Serves the given body at the given path.
+     *
+     * @param path path relative to the Go server context, including the query string if any e.g. /api/stages/1.xml
+     * @param body the response body
+     * @return this server
+     */
+    public FakeGoServer serve(String path, String body) {
+        resources.put(path, body.replace(FIXTURE_SERVER, String.format("http://%s:%d", getHostname(), getPort())));
+        return this;
+    }
+
+    /**
+     * Returns a file from the testdata folder as this server would serve it.
+     *
+     * @param fixture the file relative to the testdata folder e.g. 2.4/stage-9.xml
+     * @return the contents with links pointing at this server
+     * @throws IOException if the file could not be read
+     */
+    public String fixture(String fixture) throws IOException {
+        return FileUtils.readFileToString(new File("testdata/" + fixture), "UTF-8").replace(FIXTURE_SERVER, String.format("http://%s:%d", getHostname(), getPort()));
+    }
+
+    /**
+     * Serves a file from the testdata folder at the given path.
+     *
+     * @param path path relative to the Go server context, including the query string if any
+     * @param fixture the file relative to the testdata folder e.g. 2.4/stage-9.xml
+     * @return this server
+     * @throws IOException if the file could not be read
+     */
+    public FakeGoServer serveFixture(String path, String fixture) throws IOException {
+        return serve(path, fixture(fixture));
+    }
+
+    /**
+     * Serves the three pages of the feed of the pipeline called 'pipeline' from the 2.4 fixtures, along with the stages,
+     * pipelines and jobs they link to.
+     *
+     * @return this server
+     * @throws IOException if the fixtures could not be read
+     */
+    public FakeGoServer serveFixtures() throws IOException {
+        serveFixture("/api/pipelines/pipeline/stages.xml", "2.4/feed.xml");
+        serveFixture("/api/pipelines/pipeline/stages.xml?before=8", "2.4/feed-2.xml");
+        serveFixture("/api/pipelines/pipeline/stages.xml?before=6", "2.4/feed-3.xml");
+        for (int counter = 6; counter <= 9; counter++) {
+            serveFixture(String.format("/api/stages/%d.xml", counter), String.format("2.4/stage-%d.xml", counter));
+            serveFixture(String.format("/api/pipelines/pipeline/%d.xml", counter), counter == 9 ? "2.4/pipeline-9.xml" : "2.4/pipeline-8.xml");
+        }
+        serveFixture("/api/jobs/1.xml", "2.4/job-1.xml");
+        return serveFixture("/api/jobs/2.xml", "2.4/job-2.xml");
+    }
+
+    /**
+     * Generates a pipeline with the given number of instances, each with one stage, and serves its feed in pages of 25
+     * entries linked by rel='next', along with the stages and pipelines they link to. Stage ids are the same as the
+     * pipeline counters.
+     *
+     * @param pipeline name of the pipeline
+     * @param instances number of pipeline instances
+     * @return this server
+     */
+    public FakeGoServer generateFeed(String pipeline, int instances) {
+        String feedPath = String.format("/api/pipelines/%s/stages.xml", pipeline);
+        for (int newest = instances; newest > 0; newest -= FEED_PAGE_SIZE) {
+            int oldest = Math.max(1, newest - FEED_PAGE_SIZE + 1);
+            StringBuilder feed = new StringBuilder();
+            feed.append("<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:go=\"http://www.thoughtworks-studios.com/ns/go\">\n");
+            feed.append(String.format("    <title><![CDATA[%s]]></title>\n", pipeline));
+            feed.append(String.format("    <link rel=\"self\" href=\"%s/go%s\"/>\n", FIXTURE_SERVER, feedPath));
+            if (oldest > 1) {
+                feed.append(String.format("    <link rel=\"next\" href=\"%s/go%s?before=%d\"/>\n", FIXTURE_SERVER, feedPath, oldest));
+            }
+            for (int counter = newest; counter >= oldest; counter--) {
+                feed.append(entry(pipeline, counter));
+                serve(String.format("/api/stages/%d.xml", counter), stage(pipeline, counter));
+                serve(String.format("/api/pipelines/%s/%d.xml", pipeline, counter), pipeline(pipeline, counter));
+            }
+            feed.append("</feed>");
+            serve(newest == instances ? feedPath : String.format("%s?before=%d", feedPath, newest + 1), feed.toString());
+        }
+        return this;
+    }
+
+    private String entry(String pipeline, int counter) {
+        return String.format("    <entry>\n" +
+                "        <title><![CDATA[%1$s(%2$d) stage stage(1) Passed]]></title>\n" +
+                "        <updated>2011-01-28T14:23:37+05:30</updated>\n" +
+                "        <id>%3$s/go/pipelines/%1$s/%2$d/stage/1</id>\n" +
+                "        <author><name><![CDATA[Go]]></name></author>\n" +
+                "        <link title=\"stage Stage Detail\" href=\"%3$s/go/api/stages/%2$d.xml\" rel=\"alternate\" type=\"application/vnd.go+xml\"/>\n" +
+                "        <link title=\"%1$s Pipeline Detail\" href=\"%3$s/go/api/pipelines/%1$s/%2$d.xml\" rel=\"http://www.thoughtworks-studios.com/ns/relations/go/pipeline\" type=\"application/vnd.go+xml\"/>\n" +
+                "    </entry>\n", pipeline, counter, FIXTURE_SERVER);
+    }
+
+    private String stage(String pipeline, int counter) {
+        return String.format("<stage name=\"stage\" counter=\"1\">\n" +
+                "    <link rel=\"self\" href=\"%3$s/go/api/stages/%2$d.xml\"/>\n" +
+                "    <pipeline name=\"%1$s\" counter=\"%2$d\" label=\"%2$d\" href=\"%3$s/go/api/pipelines/%1$s/%2$d.xml\"/>\n" +
+                "    <updated>2011-01-28T14:23:37+05:30</updated>\n" +
+                "    <result>Passed</result>\n" +
+                "    <state>Passed</state>\n" +
+                "    <approvedBy><![CDATA[changes]]></approvedBy>\n" +
+                "    <jobs/>\n" +
+                "</stage>", pipeline, counter, FIXTURE_SERVER);
+    }
+
+    private String pipeline(String pipeline, int counter) {
+        return String.format("<pipeline name=\"%1$s\" counter=\"%2$d\" label=\"%2$d\">\n" +
+                "    <link rel=\"self\" href=\"%3$s/go/api/pipelines/%1$s/%2$d.xml\"/>\n" +
+                "    <scheduleTime>2011-01-28T14:20:00+05:30</scheduleTime>\n" +
+                "    <materials/>\n" +
+                "    <stages>\n" +
+                "        <stage href=\"%3$s/go/api/stages/%2$d.xml\"/>\n" +
+                "    </stages>\n" +
+                "    <approvedBy><![CDATA[changes]]></approvedBy>\n" +
+                "</pipeline>", pipeline, counter, FIXTURE_SERVER);
+    }
+
+    /**
+     * Delays every response by the given time.
+     *
+     * @param millis the delay in milliseconds
+     * @return this server
+     */
+    public FakeGoServer withLatency(long millis) {
+        this.latency = millis;
+        return this;
+    }
+
+    public FakeGoServer withoutEtags() {
+        this.etags = false;
+        return this;
+    }
+
+    public FakeGoServer withoutCompression() {
+        this.compression = false;
+        return this;
+    }
+
+    /**
+     * Fails the next requests with the given http status, whatever they are for.
+     *
+     * @param count number of requests to fail
+     * @param code the http status to fail them with
+     * @return this server
+     */
+    public FakeGoServer failNext(int count, int code) {
+        this.failureCode = code;
+        this.failuresToInject.set(count);
+        return this;
+    }
+
+    /**
+     * Fails a random share of the requests with the given http status.
+     *
+     * @param rate the share of requests to fail, between 0 and 1
+     * @param code the http status to fail them with
+     * @return this server
+     */
+    public FakeGoServer failRandomly(double rate, int code) {
+        this.failureCode = code;
+        this.failureRate = rate;
+        return this;
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public int getNotModified() {
+        return notModified.get();
+    }
+
+    public int getFailures() {
+        return failures.get();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        pause();
+        if (shouldFail()) {
+            failures.incrementAndGet();
+            send(exchange, failureCode, "Injected failure");
+            return;
+        }
+        String body = resources.get(path(exchange));
+        if (body == null) {
+            send(exchange, 404, "Not found");
+            return;
+        }
+        if (etags) {
+            String etag = "\"" + DigestUtils.md5Hex(body) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        }
+        send(exchange, 200, body);
+    }
+
+    private String path(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath().substring("/go".length());
+        String query = exchange.getRequestURI().getRawQuery();
+        return query == null ? path : path + "?" + query;
+    }
+
+    private void pause() {
+        if (latency <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean shouldFail() {
+        for (int remaining = failuresToInject.get(); remaining > 0; remaining = failuresToInject.get()) {
+            if (failuresToInject.compareAndSet(remaining, remaining - 1)) {
+                return true;
+            }
+        }
+        return failureRate > 0 && random.nextDouble() < failureRate;
+    }
+
+    private void send(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (compression && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(gzipped);
+            gzip.write(bytes);
+            gzip.close();
+            bytes = gzipped.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream response = exchange.getResponseBody();
+        response.write(bytes);
+        response.close();
+    }
+}
@@ -0,0 +1,28 @@
+package com.thoughtworks.go.util;
+
+import org.dom4j.Element;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ElementWalkerTest {
+
+    @Test
+    public void shouldVisitEveryElementOnceInDocumentOrder() throws Exception {
+        final StringBuilder visits = new StringBuilder();
+        new ElementWalker() {
+            @Override
+            protected void start(Element element) {
+                visits.append("<").append(element.getName());
+            }
+
+            @Override
+            protected void end(Element element) {
+                visits.append(">");
+            }
+        }.walk(XmlUtil.parse("<a>text<b><c/></b><!-- comment --><d/></a>").getRootElement());
+
+        assertThat(visits.toString(), is("<a<b<c>><d>>"));
+    }
+}
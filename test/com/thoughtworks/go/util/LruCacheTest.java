@@ -0,0 +1,39 @@
+package com.thoughtworks.go.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class LruCacheTest {
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedValuesWhenTooHeavy() throws Exception {
+        LruCache<String, String> cache = new LruCache<String, String>(6) {
+            @Override
+            protected long weigh(String value) {
+                return value.length();
+            }
+        };
+        cache.put("first", "aa");
+        cache.put("second", "bb");
+        cache.get("first");
+        cache.put("third", "ccc");
+
+        assertThat(cache.get("first"), is("aa"));
+        assertThat(cache.get("second"), is(nullValue()));
+        assertThat(cache.get("third"), is("ccc"));
+    }
+
+    @Test
+    public void shouldNotCacheValuesHeavierThanTheCache() throws Exception {
+        LruCache<String, String> cache = new LruCache<String, String>(1);
+        cache.put("first", "aa");
+        cache.put("second", "bb");
+
+        assertThat(cache.get("first"), is(nullValue()));
+        assertThat(cache.get("second"), is("bb"));
+        assertThat(cache.size(), is(1));
+    }
+}
@@ -4,10 +4,18 @@ import org.junit.Test;
 import static org.junit.Assert.assertThat;
 import org.apache.commons.io.FileUtils;
 import org.dom4j.Document;
+import org.dom4j.DocumentFactory;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
 
 import java.io.IOException;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class XmlUtilTest {
 
@@ -29,6 +37,37 @@ public class XmlUtilTest {
         assertThat(XmlUtil.nodeText(document, "//state"), is("Completed"));
     }
 
+    @Test
+    public void shouldParseAndQueryFromSeveralThreadsAtOnce() throws Exception {
+        final String feed = file("testdata/2.4/feed.xml");
+        final String job = file("testdata/2.4/job-1.xml");
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 200; i++) {
+                results.add(threads.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        Document feedDocument = XmlUtil.parse(feed);
+                        Document jobDocument = XmlUtil.parse(job);
+                        return XmlUtil.nodes(feedDocument, "//a:entry").size() == 2
+                                && XmlUtil.nodeText(jobDocument, "//state").equals("Completed");
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldLeaveTheSharedDocumentFactoryAlone() throws Exception {
+        XmlUtil.parse(file("testdata/2.4/feed.xml"));
+        assertThat(DocumentFactory.getInstance().getXPathNamespaceURIs(), is(nullValue()));
+    }
+
     private String file(String name) throws IOException {
         return FileUtils.readFileToString(new File(name));
     }